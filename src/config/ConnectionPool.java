@@ -0,0 +1,360 @@
+package config;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pool acotado de conexiones JDBC.
+ * Cada operación toma su propia conexión y la devuelve al cerrarla; las conexiones
+ * ociosas se validan antes de reutilizarse y se descartan tras el tiempo de inactividad.
+ * Dentro de {@link #inTransaction(SqlWork)} el hilo actual comparte una única conexión,
+ * de modo que varios DAOs pueden participar en la misma transacción.
+ */
+public class ConnectionPool implements AutoCloseable {
+
+    @FunctionalInterface
+    public interface SqlWork<T> {
+        T execute(Connection connection) throws SQLException;
+    }
+
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+    private static final long VALIDATE_AFTER_IDLE_MILLIS = 5_000;
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int maxSize;
+    private final int minIdle;
+    private final long maxWaitMillis;
+    private final long idleTimeoutMillis;
+
+    private final Semaphore permits;
+    private final ConcurrentLinkedDeque<IdleConnection> idle = new ConcurrentLinkedDeque<>();
+    private final ThreadLocal<Connection> transactionConnection = new ThreadLocal<>();
+    private final ThreadLocal<List<Runnable>> afterCommitActions = new ThreadLocal<>();
+    private final ScheduledExecutorService evictor;
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+
+    private final AtomicInteger activeCount = new AtomicInteger();
+    private final AtomicInteger physicalCount = new AtomicInteger();
+    private final LongAdder checkoutCount = new LongAdder();
+    private final LongAdder timeoutCount = new LongAdder();
+    private final LongAdder evictedCount = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    public ConnectionPool(String url, String user, String password, int maxSize, int minIdle, long maxWaitMillis, long idleTimeoutMillis) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("El tamaño máximo del pool debe ser positivo");
+        }
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.maxSize = maxSize;
+        this.minIdle = Math.min(minIdle, maxSize);
+        this.maxWaitMillis = maxWaitMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.permits = new Semaphore(maxSize, true);
+
+        this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "connection-pool-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1_000, idleTimeoutMillis / 2);
+        evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Obtiene una conexión del pool. Debe cerrarse (try-with-resources) para devolverla.
+     * Si el hilo está dentro de una transacción se devuelve la conexión de esa transacción.
+     */
+    public Connection getConnection() throws SQLException {
+        Connection bound = transactionConnection.get();
+        if (bound != null) {
+            return wrap(bound, false);
+        }
+        return wrap(checkout(), true);
+    }
+
+    /**
+     * Ejecuta el trabajo en una transacción. Las llamadas anidadas se unen a la transacción externa,
+     * que es la única que confirma o revierte.
+     */
+    public <T> T inTransaction(SqlWork<T> work) throws SQLException {
+        Connection bound = transactionConnection.get();
+        if (bound != null) {
+            return work.execute(wrap(bound, false));
+        }
+
+        Connection physical = checkout();
+        List<Runnable> actions = new ArrayList<>();
+        T result;
+        try {
+            physical.setAutoCommit(false);
+            transactionConnection.set(physical);
+            afterCommitActions.set(actions);
+            try {
+                result = work.execute(wrap(physical, false));
+                physical.commit();
+            } catch (SQLException | RuntimeException e) {
+                physical.rollback();
+                throw e;
+            }
+        } finally {
+            transactionConnection.remove();
+            afterCommitActions.remove();
+            release(physical);
+        }
+        // Ya confirmada y con la conexión devuelta: las acciones no alargan la transacción
+        for (Runnable action : actions) {
+            runAfterCommit(action);
+        }
+        return result;
+    }
+
+    /**
+     * Ejecuta la acción cuando se confirme la transacción del hilo; si se revierte, se descarta.
+     * Fuera de una transacción se ejecuta enseguida. Un error en la acción se informa sin afectar
+     * a quien confirmó, porque los datos ya están guardados.
+     */
+    public void afterCommit(Runnable action) {
+        List<Runnable> actions = afterCommitActions.get();
+        if (actions != null) {
+            actions.add(action);
+        } else {
+            runAfterCommit(action);
+        }
+    }
+
+    private void runAfterCommit(Runnable action) {
+        try {
+            action.run();
+        } catch (RuntimeException e) {
+            System.err.println("Error en una acción posterior a la confirmación: " + e.getMessage());
+        }
+    }
+
+    public boolean isInTransaction() {
+        return transactionConnection.get() != null;
+    }
+
+    private Connection checkout() throws SQLException {
+        if (closed.get()) {
+            throw new SQLException("El pool de conexiones está cerrado");
+        }
+
+        long start = System.nanoTime();
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrumpido esperando una conexión", e);
+        }
+        long waited = System.nanoTime() - start;
+        totalWaitNanos.add(waited);
+        maxWaitNanos.accumulateAndGet(waited, Math::max);
+
+        if (!acquired) {
+            timeoutCount.increment();
+            throw new SQLException("No hay conexiones disponibles tras " + maxWaitMillis + " ms (activas: " + activeCount.get() + ")");
+        }
+
+        try {
+            Connection connection = takeIdleOrCreate();
+            activeCount.incrementAndGet();
+            checkoutCount.increment();
+            return connection;
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private Connection takeIdleOrCreate() throws SQLException {
+        IdleConnection candidate;
+        while ((candidate = idle.pollFirst()) != null) {
+            long idleFor = System.currentTimeMillis() - candidate.since;
+            if (idleFor < VALIDATE_AFTER_IDLE_MILLIS || isValid(candidate.connection)) {
+                return candidate.connection;
+            }
+            discard(candidate.connection);
+        }
+        Connection connection = DriverManager.getConnection(url, user, password);
+        physicalCount.incrementAndGet();
+        return connection;
+    }
+
+    private void release(Connection connection) {
+        activeCount.decrementAndGet();
+        try {
+            if (connection.isClosed()) {
+                physicalCount.decrementAndGet();
+                return;
+            }
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+            if (closed.get()) {
+                discard(connection);
+            } else {
+                idle.offerFirst(new IdleConnection(connection, System.currentTimeMillis()));
+            }
+        } catch (SQLException e) {
+            discard(connection);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private boolean isValid(Connection connection) {
+        try {
+            return connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void discard(Connection connection) {
+        physicalCount.decrementAndGet();
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            // La conexión ya no es utilizable
+        }
+    }
+
+    private void evictIdle() {
+        long now = System.currentTimeMillis();
+        Iterator<IdleConnection> it = idle.descendingIterator();
+        while (it.hasNext() && idle.size() > minIdle) {
+            IdleConnection candidate = it.next();
+            if (now - candidate.since >= idleTimeoutMillis && idle.remove(candidate)) {
+                evictedCount.increment();
+                discard(candidate.connection);
+            }
+        }
+    }
+
+    private Connection wrap(Connection physical, boolean owner) {
+        InvocationHandler handler = new InvocationHandler() {
+            private boolean handleClosed;
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                switch (method.getName()) {
+                    case "close":
+                        if (!handleClosed) {
+                            handleClosed = true;
+                            if (owner) {
+                                release(physical);
+                            }
+                        }
+                        return null;
+                    case "isClosed":
+                        return handleClosed || physical.isClosed();
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "toString":
+                        return "PooledConnection[" + physical + "]";
+                    default:
+                        if (handleClosed) {
+                            throw new SQLException("La conexión ya fue devuelta al pool");
+                        }
+                        try {
+                            return method.invoke(physical, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                }
+            }
+        };
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, handler);
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int getActiveCount() {
+        return activeCount.get();
+    }
+
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    public int getTotalCount() {
+        return physicalCount.get();
+    }
+
+    public long getCheckoutCount() {
+        return checkoutCount.sum();
+    }
+
+    public long getTimeoutCount() {
+        return timeoutCount.sum();
+    }
+
+    public long getEvictedCount() {
+        return evictedCount.sum();
+    }
+
+    public double getAverageWaitMillis() {
+        long checkouts = checkoutCount.sum() + timeoutCount.sum();
+        return checkouts == 0 ? 0 : totalWaitNanos.sum() / 1_000_000.0 / checkouts;
+    }
+
+    public double getMaxWaitMillis() {
+        return maxWaitNanos.get() / 1_000_000.0;
+    }
+
+    public String getStats() {
+        return String.format("activas=%d, ociosas=%d, total=%d/%d, préstamos=%d, espera media=%.3f ms, espera máx=%.3f ms, timeouts=%d, desalojadas=%d",
+                getActiveCount(), getIdleCount(), getTotalCount(), maxSize, getCheckoutCount(),
+                getAverageWaitMillis(), getMaxWaitMillis(), getTimeoutCount(), getEvictedCount());
+    }
+
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        evictor.shutdownNow();
+        IdleConnection candidate;
+        while ((candidate = idle.pollFirst()) != null) {
+            discard(candidate.connection);
+        }
+    }
+
+    private static final class IdleConnection {
+        private final Connection connection;
+        private final long since;
+
+        private IdleConnection(Connection connection, long since) {
+            this.connection = connection;
+            this.since = since;
+        }
+    }
+}
@@ -1,16 +1,53 @@
 package config;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class DatabaseConfig {
 
-    private static final String URL = "jdbc:h2:tcp://localhost/~/outlook_db";
-    private static final String USER = "sa";
-    private static final String PASSWORD = "";
+    private static final String URL = System.getProperty("db.url", "jdbc:h2:tcp://localhost/~/outlook_db");
+    private static final String USER = System.getProperty("db.user", "sa");
+    private static final String PASSWORD = System.getProperty("db.password", "");
+
+    private static final int POOL_MAX_SIZE = Integer.getInteger("db.pool.maxSize", 8);
+    private static final int POOL_MIN_IDLE = Integer.getInteger("db.pool.minIdle", 1);
+    private static final long POOL_MAX_WAIT_MILLIS = Long.getLong("db.pool.maxWaitMillis", 5_000L);
+    private static final long POOL_IDLE_TIMEOUT_MILLIS = Long.getLong("db.pool.idleTimeoutMillis", 60_000L);
+
+    private static final List<Runnable> beforeClose = new CopyOnWriteArrayList<>();
+    private static ConnectionPool connectionPool;
+
+    public static synchronized ConnectionPool getConnectionPool() {
+        if (connectionPool == null) {
+            connectionPool = new ConnectionPool(URL, USER, PASSWORD,
+                    POOL_MAX_SIZE, POOL_MIN_IDLE, POOL_MAX_WAIT_MILLIS, POOL_IDLE_TIMEOUT_MILLIS);
+            ConnectionPool pool = connectionPool;
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                for (Runnable task : beforeClose) {
+                    try {
+                        task.run();
+                    } catch (RuntimeException e) {
+                        System.err.println("Error al cerrar: " + e.getMessage());
+                    }
+                }
+                System.out.println("Pool de conexiones: " + pool.getStats());
+                pool.close();
+            }, "connection-pool-shutdown"));
+        }
+        return connectionPool;
+    }
+
+    /**
+     * Registra una tarea que debe ejecutarse al salir mientras el pool aún está abierto
+     * (por ejemplo, escribir datos pendientes).
+     */
+    public static void runBeforeClose(Runnable task) {
+        beforeClose.add(task);
+    }
 
     public static Connection getConnection() throws SQLException {
-        return DriverManager.getConnection(URL, USER, PASSWORD);
+        return getConnectionPool().getConnection();
     }
 }
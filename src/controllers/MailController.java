@@ -1,36 +1,61 @@
 package controllers;
 
+import models.FolderCounter;
 import models.Mail;
+import models.MailCursor;
+import models.MailPage;
+import models.MailboxChanges;
+import models.SearchPage;
 import models.User;
+import models.UserLookup;
 import models.UserMail;
+import persistence.dao.MailDao;
 import services.InternalMailService;
+import services.MailEventBus;
+import services.MailSearchService;
+import services.MailboxEvent;
 import utils.MailFolder;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 public class MailController {
     private final InternalMailService mailService;
+    private final MailSearchService searchService;
     private final User currentUser;
 
-    public MailController(InternalMailService mailService, User currentUser) {
+    public MailController(InternalMailService mailService, MailSearchService searchService, User currentUser) {
         this.mailService = mailService;
+        this.searchService = searchService;
         this.currentUser = currentUser;
     }
 
+    /**
+     * Recibe en lotes, en el ejecutor indicado, los cambios confirmados en el buzón del usuario actual.
+     */
+    public MailEventBus.Subscription subscribeToChanges(Executor executor, Consumer<List<MailboxEvent>> handler) {
+        return mailService.getEventBus().subscribe("buzón de " + currentUser.getEmail(), currentUser.getId(),
+                MailEventBus.DEFAULT_CAPACITY, executor, handler);
+    }
+
     public void sendMail(User from, String to, String cc, String bcc, String subject, String message) {
         if (from == null) {
             throw new IllegalArgumentException("El remitente no puede ser nulo");
         }
 
-        List<User> recipients = parseEmails(to);
+        List<User> recipients = parseRecipients(to);
         if (recipients.isEmpty()) {
             throw new IllegalArgumentException("Se requiere al menos un destinatario");
         }
 
-        List<User> ccList = parseEmails(cc);
-        List<User> bccList = parseEmails(bcc);
+        List<User> ccList = parseRecipients(cc);
+        List<User> bccList = parseRecipients(bcc);
 
         mailService.sendMail(from, recipients, ccList, bccList, subject, message);
     }
@@ -47,6 +72,14 @@ public class MailController {
         return mailService.findByUserAndFolder(currentUser, MailFolder.DRAFTS);
     }
 
+    public Mail loadBody(Mail mail) {
+        return mailService.loadBody(mail);
+    }
+
+    public void readBody(Mail mail, MailDao.BodyReader reader) {
+        mailService.readBody(mail, reader);
+    }
+
     public void markAsRead(User user, Mail mail) {
         mailService.markAsRead(user, mail);
     }
@@ -55,6 +88,49 @@ public class MailController {
         mailService.markAsDeleted(currentUser, mail);
     }
 
+    public int markAsRead(Collection<UUID> mailIds, boolean read) {
+        return mailService.markAsRead(currentUser, mailIds, read);
+    }
+
+    public int markFolderAsRead(MailFolder folder) {
+        return mailService.markFolderAsRead(currentUser, folder);
+    }
+
+    public int moveToFolder(Collection<UUID> mailIds, MailFolder target) {
+        return mailService.moveToFolder(currentUser, mailIds, target);
+    }
+
+    public int moveToTrash(Collection<UUID> mailIds) {
+        return mailService.moveToTrash(currentUser, mailIds);
+    }
+
+    public int deleteMails(Collection<UUID> mailIds) {
+        return mailService.deleteMails(currentUser, mailIds);
+    }
+
+    public int emptyTrash() {
+        return mailService.emptyTrash(currentUser);
+    }
+
+    /**
+     * Busca en la carpeta indicada, o en todo el buzón si es null.
+     */
+    public SearchPage search(String query, MailFolder folder, int offset, int limit) {
+        return searchService.search(currentUser, query, folder, offset, limit);
+    }
+
+    public int rebuildSearchIndex() {
+        return searchService.rebuildIndex(Math.max(2, Runtime.getRuntime().availableProcessors()));
+    }
+
+    public Map<MailFolder, FolderCounter> getFolderCounters() {
+        return mailService.getFolderCounters(currentUser);
+    }
+
+    public int repairFolderCounters() {
+        return mailService.repairFolderCounters();
+    }
+
     public Mail createDraft(User user, String to, String cc, String bcc, String subject, String message) {
         if (user == null) {
             throw new IllegalArgumentException("El usuario no puede ser nulo");
@@ -87,10 +163,51 @@ public class MailController {
         return mailService.findByUserAndFolder(user, folder);
     }
 
+    public MailPage findPageByUserAndFolder(User user, MailFolder folder, MailCursor after, int limit) {
+        return mailService.findPageByUserAndFolder(user, folder, after, limit);
+    }
+
+    public MailCursor findCursor(User user, MailFolder folder, MailCursor after, int skip) {
+        return mailService.findCursor(user, folder, after, skip);
+    }
+
+    public int countByUserAndFolder(User user, MailFolder folder) {
+        return mailService.countByUserAndFolder(user, folder);
+    }
+
+    public long findModseq(User user) {
+        return mailService.findModseq(user);
+    }
+
+    public MailboxChanges findChangesSince(User user, long modseq, int limit) {
+        return mailService.findChangesSince(user, modseq, limit);
+    }
+
+    /**
+     * Para borradores: las direcciones que no corresponden a ningún usuario se descartan.
+     */
     private List<User> parseEmails(String emails) {
         if (emails == null || emails.isEmpty()) {
             return new ArrayList<>();
         }
-        return mailService.findUsersByEmails(emails.split(","));
+        UserLookup lookup = mailService.lookupUsersByEmails(emails.split(","));
+        if (lookup.hasUnknown()) {
+            System.out.println("Direcciones desconocidas descartadas del borrador: " + lookup.getUnknown());
+        }
+        return lookup.getUsers();
+    }
+
+    /**
+     * Para envíos: una dirección desconocida impide enviar el correo.
+     */
+    private List<User> parseRecipients(String emails) {
+        if (emails == null || emails.isEmpty()) {
+            return new ArrayList<>();
+        }
+        UserLookup lookup = mailService.lookupUsersByEmails(emails.split(","));
+        if (lookup.hasUnknown()) {
+            throw new IllegalArgumentException("Direcciones desconocidas: " + String.join(", ", lookup.getUnknown()));
+        }
+        return lookup.getUsers();
     }
 } 
\ No newline at end of file
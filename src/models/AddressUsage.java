@@ -0,0 +1,78 @@
+package models;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * Uso de una dirección por un usuario, con una puntuación "frecency" que decae con el tiempo.
+ * La puntuación se guarda en dominio logarítmico: clave = ln(puntuación) + λ·t, de modo que un uso
+ * nuevo solo suma en ese dominio y ordenar por la clave equivale a ordenar por la puntuación actual
+ * sin tener que reescribir las demás direcciones a medida que envejecen.
+ */
+public class AddressUsage {
+
+    public static final double HALF_LIFE_DAYS = 14;
+    private static final double DECAY_PER_MILLI = Math.log(2) / (HALF_LIFE_DAYS * 24 * 60 * 60 * 1000);
+
+    private final String email;
+    private double scoreKey;
+    private LocalDateTime lastUsed;
+    private int useCount;
+
+    public AddressUsage(String email, double scoreKey, LocalDateTime lastUsed, int useCount) {
+        this.email = email;
+        this.scoreKey = scoreKey;
+        this.lastUsed = lastUsed;
+        this.useCount = useCount;
+    }
+
+    public static AddressUsage firstUse(String email, long nowMillis) {
+        AddressUsage usage = new AddressUsage(email, Double.NEGATIVE_INFINITY, null, 0);
+        usage.recordUse(nowMillis);
+        return usage;
+    }
+
+    /**
+     * Suma un uso de peso 1 en el instante indicado: clave = ln(e^clave + e^(λ·t)).
+     */
+    public void recordUse(long nowMillis) {
+        double key = nowMillis * DECAY_PER_MILLI;
+        if (useCount == 0 || scoreKey == Double.NEGATIVE_INFINITY) {
+            scoreKey = key;
+        } else {
+            double max = Math.max(scoreKey, key);
+            scoreKey = max + Math.log1p(Math.exp(-Math.abs(scoreKey - key)));
+        }
+        useCount++;
+        lastUsed = LocalDateTime.ofInstant(Instant.ofEpochMilli(nowMillis), ZoneId.systemDefault());
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public double getScoreKey() {
+        return scoreKey;
+    }
+
+    /**
+     * Puntuación decaída al instante indicado (1.0 equivale a un uso hecho en ese momento).
+     */
+    public double getScore(long nowMillis) {
+        return Math.exp(scoreKey - nowMillis * DECAY_PER_MILLI);
+    }
+
+    public LocalDateTime getLastUsed() {
+        return lastUsed;
+    }
+
+    public int getUseCount() {
+        return useCount;
+    }
+
+    @Override
+    public String toString() {
+        return email + " (" + useCount + " usos)";
+    }
+}
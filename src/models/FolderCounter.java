@@ -0,0 +1,94 @@
+package models;
+
+import utils.MailFolder;
+
+import java.util.UUID;
+
+/**
+ * Contadores de una carpeta de un usuario: correos, no leídos y tamaño (caracteres de asunto y cuerpo).
+ * También se usa como diferencia a sumar sobre los contadores guardados.
+ */
+public class FolderCounter {
+
+    private final UUID userId;
+    private final MailFolder folder;
+    private final long total;
+    private final long unread;
+    private final long size;
+
+    public FolderCounter(UUID userId, MailFolder folder, long total, long unread, long size) {
+        this.userId = userId;
+        this.folder = folder;
+        this.total = total;
+        this.unread = unread;
+        this.size = size;
+    }
+
+    public static FolderCounter empty(UUID userId, MailFolder folder) {
+        return new FolderCounter(userId, folder, 0, 0, 0);
+    }
+
+    /**
+     * Diferencia que produce agregar la copia de un correo a su carpeta.
+     */
+    public static FolderCounter of(UserMail userMail) {
+        Mail mail = userMail.getMail();
+        return new FolderCounter(userMail.getUser().getId(), userMail.getFolder(), 1,
+                userMail.isRead() ? 0 : 1, sizeOf(mail.getSubject()) + sizeOf(mail.getMessage()));
+    }
+
+    private static long sizeOf(String text) {
+        return text != null ? text.length() : 0;
+    }
+
+    public FolderCounter plus(FolderCounter other) {
+        return new FolderCounter(userId, folder, total + other.total, unread + other.unread, size + other.size);
+    }
+
+    public FolderCounter minus(FolderCounter other) {
+        return new FolderCounter(userId, folder, total - other.total, unread - other.unread, size - other.size);
+    }
+
+    public boolean isZero() {
+        return total == 0 && unread == 0 && size == 0;
+    }
+
+    public UUID getUserId() {
+        return userId;
+    }
+
+    public MailFolder getFolder() {
+        return folder;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public long getUnread() {
+        return unread;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof FolderCounter)) return false;
+        FolderCounter other = (FolderCounter) o;
+        return total == other.total && unread == other.unread && size == other.size
+                && userId.equals(other.userId) && folder == other.folder;
+    }
+
+    @Override
+    public int hashCode() {
+        return userId.hashCode() * 31 + folder.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return folder + ": " + total + " correos, " + unread + " sin leer";
+    }
+}
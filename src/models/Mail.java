@@ -78,10 +78,17 @@ public class Mail {
         this.subject = subject;
     }
 
+    /**
+     * Cuerpo del correo, o null si el correo se cargó solo con la cabecera (listados de carpeta).
+     */
     public String getMessage() {
         return message;
     }
 
+    public boolean isBodyLoaded() {
+        return message != null;
+    }
+
     public void setMessage(String message) {
         this.message = message;
     }
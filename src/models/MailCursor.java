@@ -0,0 +1,50 @@
+package models;
+
+import java.time.LocalDateTime;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Posición estable dentro de una carpeta ordenada por (fecha, id) descendente.
+ * Una página que empieza "después" de este cursor no se ve afectada por correos nuevos.
+ */
+public final class MailCursor {
+
+    private final LocalDateTime date;
+    private final UUID mailId;
+
+    public MailCursor(LocalDateTime date, UUID mailId) {
+        this.date = Objects.requireNonNull(date, "La fecha del cursor no puede ser nula");
+        this.mailId = Objects.requireNonNull(mailId, "El id del cursor no puede ser nulo");
+    }
+
+    public static MailCursor of(Mail mail) {
+        return new MailCursor(mail.getDate(), mail.getId());
+    }
+
+    public LocalDateTime getDate() {
+        return date;
+    }
+
+    public UUID getMailId() {
+        return mailId;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof MailCursor)) return false;
+        MailCursor other = (MailCursor) o;
+        return date.equals(other.date) && mailId.equals(other.mailId);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(date, mailId);
+    }
+
+    @Override
+    public String toString() {
+        return date + "/" + mailId;
+    }
+}
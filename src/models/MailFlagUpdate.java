@@ -0,0 +1,58 @@
+package models;
+
+import java.util.UUID;
+
+/**
+ * Cambio pendiente de las marcas de un correo para un usuario; null significa "sin cambios".
+ */
+public class MailFlagUpdate {
+
+    private final UUID userId;
+    private final UUID mailId;
+    private final Boolean read;
+    private final Boolean deleted;
+
+    public MailFlagUpdate(UUID userId, UUID mailId, Boolean read, Boolean deleted) {
+        this.userId = userId;
+        this.mailId = mailId;
+        this.read = read;
+        this.deleted = deleted;
+    }
+
+    public UUID getUserId() {
+        return userId;
+    }
+
+    public UUID getMailId() {
+        return mailId;
+    }
+
+    public Boolean getRead() {
+        return read;
+    }
+
+    public Boolean getDeleted() {
+        return deleted;
+    }
+
+    /**
+     * Combina este cambio con uno posterior sobre el mismo correo; el posterior tiene prioridad.
+     */
+    public MailFlagUpdate merge(MailFlagUpdate later) {
+        return new MailFlagUpdate(userId, mailId,
+                later.read != null ? later.read : read,
+                later.deleted != null ? later.deleted : deleted);
+    }
+
+    /**
+     * Aplica el cambio a una copia leída de la base.
+     */
+    public void applyTo(UserMail userMail) {
+        if (read != null) {
+            userMail.setRead(read);
+        }
+        if (Boolean.TRUE.equals(deleted)) {
+            userMail.markAsDeleted();
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package models;
+
+import java.util.List;
+
+/**
+ * Página de correos de una carpeta junto con el cursor para pedir la siguiente.
+ */
+public class MailPage {
+
+    private final List<UserMail> items;
+    private final MailCursor nextCursor;
+
+    public MailPage(List<UserMail> items, MailCursor nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<UserMail> getItems() {
+        return items;
+    }
+
+    /**
+     * Cursor del último elemento de la página, o null si no hay más páginas.
+     */
+    public MailCursor getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+}
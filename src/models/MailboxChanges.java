@@ -0,0 +1,50 @@
+package models;
+
+import utils.MailFolder;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Cambios del buzón de un usuario posteriores a un número de modificación: las cabeceras de los
+ * correos agregados o modificados (con su carpeta actual) y los ids de los quitados, con la carpeta
+ * en la que estaban. {@link #getModseq()} es el número a pedir la próxima vez.
+ */
+public class MailboxChanges {
+
+    private final List<UserMail> changed;
+    private final Map<UUID, MailFolder> removed;
+    private final long modseq;
+    private final boolean complete;
+
+    public MailboxChanges(List<UserMail> changed, Map<UUID, MailFolder> removed, long modseq, boolean complete) {
+        this.changed = changed;
+        this.removed = removed;
+        this.modseq = modseq;
+        this.complete = complete;
+    }
+
+    public List<UserMail> getChanged() {
+        return changed;
+    }
+
+    public Map<UUID, MailFolder> getRemoved() {
+        return removed;
+    }
+
+    public long getModseq() {
+        return modseq;
+    }
+
+    /**
+     * False si había más cambios que el límite pedido: conviene recargar en vez de aplicarlos.
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    public boolean isEmpty() {
+        return changed.isEmpty() && removed.isEmpty();
+    }
+}
@@ -0,0 +1,57 @@
+package models;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Aparición de un término en un correo: frecuencias en asunto y cuerpo, posiciones (solo si se
+ * pidieron, para las frases) y los datos del documento que necesita el ranking.
+ */
+public class Posting {
+
+    private final UUID mailId;
+    private final int subjectFrequency;
+    private final int bodyFrequency;
+    private final int[] positions;
+    private final int length;
+    private final LocalDateTime mailDate;
+
+    public Posting(UUID mailId, int subjectFrequency, int bodyFrequency, int[] positions, int length, LocalDateTime mailDate) {
+        this.mailId = mailId;
+        this.subjectFrequency = subjectFrequency;
+        this.bodyFrequency = bodyFrequency;
+        this.positions = positions;
+        this.length = length;
+        this.mailDate = mailDate;
+    }
+
+    public UUID getMailId() {
+        return mailId;
+    }
+
+    public int getSubjectFrequency() {
+        return subjectFrequency;
+    }
+
+    public int getBodyFrequency() {
+        return bodyFrequency;
+    }
+
+    /**
+     * Posiciones ordenadas del término (asunto primero, después el cuerpo), o null si no se cargaron.
+     */
+    public int[] getPositions() {
+        return positions;
+    }
+
+    /**
+     * Cantidad de términos del correo (asunto y cuerpo).
+     */
+    public int getLength() {
+        return length;
+    }
+
+    public LocalDateTime getMailDate() {
+        return mailDate;
+    }
+}
@@ -0,0 +1,10 @@
+package models;
+
+/**
+ * Tipo de destinatario de un correo, guardado en mail_recipients.recipient_type
+ */
+public enum RecipientType {
+    TO,
+    CC,
+    BCC
+}
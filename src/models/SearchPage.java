@@ -0,0 +1,38 @@
+package models;
+
+import java.util.List;
+
+/**
+ * Página de resultados de una búsqueda, ordenados por relevancia.
+ */
+public class SearchPage {
+
+    private final List<UserMail> items;
+    private final int offset;
+    private final int total;
+
+    public SearchPage(List<UserMail> items, int offset, int total) {
+        this.items = items;
+        this.offset = offset;
+        this.total = total;
+    }
+
+    public List<UserMail> getItems() {
+        return items;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * Cantidad total de correos que cumplen la consulta.
+     */
+    public int getTotal() {
+        return total;
+    }
+
+    public boolean hasNext() {
+        return offset + items.size() < total;
+    }
+}
@@ -0,0 +1,41 @@
+package models;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Resultado de buscar usuarios por una lista de direcciones: los encontrados, en el orden en que
+ * se pidieron, y las direcciones que no corresponden a ningún usuario.
+ */
+public class UserLookup {
+
+    private final Map<String, User> found;
+    private final List<String> unknown;
+
+    public UserLookup(Map<String, User> found, List<String> unknown) {
+        this.found = found;
+        this.unknown = unknown;
+    }
+
+    /**
+     * Usuarios por dirección pedida, en el orden de la petición.
+     */
+    public Map<String, User> getFound() {
+        return found;
+    }
+
+    public List<User> getUsers() {
+        Collection<User> users = found.values();
+        return new ArrayList<>(users);
+    }
+
+    public List<String> getUnknown() {
+        return unknown;
+    }
+
+    public boolean hasUnknown() {
+        return !unknown.isEmpty();
+    }
+}
@@ -0,0 +1,19 @@
+package persistence.dao;
+
+import models.AddressUsage;
+import models.User;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+public interface AddressUsageDao {
+    List<AddressUsage> findByUser(User user);
+
+    /**
+     * Inserta o actualiza las direcciones del usuario con un único lote.
+     */
+    void saveAll(UUID userId, Collection<AddressUsage> usages);
+
+    void deleteByUser(User user);
+}
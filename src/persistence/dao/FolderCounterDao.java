@@ -0,0 +1,42 @@
+package persistence.dao;
+
+import models.FolderCounter;
+import models.User;
+import utils.MailFolder;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * Contadores por (usuario, carpeta) mantenidos de forma incremental: cada cambio de user_mails
+ * suma su diferencia en la misma transacción, de modo que leerlos no recorre la carpeta.
+ */
+public interface FolderCounterDao {
+
+    /**
+     * Contadores de todas las carpetas del usuario; las carpetas sin correos no aparecen.
+     */
+    Map<MailFolder, FolderCounter> findByUser(User user);
+
+    /**
+     * Suma las diferencias a los contadores, creando las filas que falten.
+     */
+    void applyDeltas(Collection<FolderCounter> deltas);
+
+    /**
+     * Ejecuta el cambio en una transacción y aplica la diferencia de los contadores de las filas
+     * (usuario, correo) indicadas, medida antes y después del cambio.
+     */
+    <T> T track(Collection<UUID> userIds, Collection<UUID> mailIds, Supplier<T> change);
+
+    void resetUnread(UUID userId, MailFolder folder);
+
+    void clear(UUID userId, MailFolder folder);
+
+    /**
+     * Recalcula todos los contadores desde user_mails y devuelve cuántos estaban mal.
+     */
+    int rebuild();
+}
@@ -3,6 +3,8 @@ package persistence.dao;
 import models.Mail;
 import models.User;
 
+import java.io.IOException;
+import java.io.Reader;
 import java.util.List;
 import java.util.UUID;
 
@@ -12,4 +14,14 @@ public interface MailDao {
     void delete(UUID id);
     Mail findById(UUID id);
     List<Mail> findBySender(User sender);
+    String findBody(UUID id);
+    void readBody(UUID id, BodyReader reader);
+
+    /**
+     * Recibe el cuerpo como flujo de caracteres; el Reader solo es válido durante la llamada.
+     */
+    @FunctionalInterface
+    interface BodyReader {
+        void read(Reader body) throws IOException;
+    }
 }
@@ -0,0 +1,53 @@
+package persistence.dao;
+
+import models.Mail;
+import models.Posting;
+import models.User;
+import utils.MailFolder;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Índice invertido de asunto y cuerpo. Las entradas son por correo (un correo se indexa una sola
+ * vez aunque tenga muchos destinatarios); las búsquedas se limitan al buzón del usuario uniendo
+ * con user_mails.
+ */
+public interface MailSearchDao {
+
+    /**
+     * Indexa los correos reemplazando lo que hubiera de ellos; participa de la transacción en curso.
+     */
+    void index(Collection<Mail> mails);
+
+    /**
+     * Vuelve a indexar los correos leyendo su asunto y cuerpo de la base; devuelve cuántos indexó.
+     */
+    int reindex(Collection<UUID> mailIds);
+
+    void remove(Collection<UUID> mailIds);
+
+    /**
+     * Apariciones del término en los correos del usuario (de una carpeta, o de todas si es null).
+     */
+    Map<UUID, Posting> findPostings(User user, MailFolder folder, String term, boolean withPositions);
+
+    /**
+     * Longitud media de los correos indexados, en términos.
+     */
+    double averageLength();
+
+    /**
+     * Ids de correos en orden, a partir del siguiente a {@code after} (o desde el principio si es null).
+     */
+    List<UUID> findMailIdsAfter(UUID after, int limit);
+
+    /**
+     * Como {@link #findMailIdsAfter}, pero solo los correos que existen y no están indexados.
+     */
+    List<UUID> findUnindexedMailIdsAfter(UUID after, int limit);
+
+    void clear();
+}
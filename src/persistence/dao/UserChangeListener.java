@@ -0,0 +1,13 @@
+package persistence.dao;
+
+import models.User;
+
+import java.util.UUID;
+
+/**
+ * Recibe los altas y bajas de usuarios confirmadas por un UserDao.
+ */
+public interface UserChangeListener {
+    void userSaved(User user);
+    void userDeleted(UUID id);
+}
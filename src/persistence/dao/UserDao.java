@@ -1,7 +1,9 @@
 package persistence.dao;
 
 import models.User;
+import models.UserLookup;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -10,7 +12,21 @@ public interface UserDao {
     void save(User user);
     Optional<User> findById(UUID id);
     Optional<User> findByEmail(String email);
+
+    /**
+     * Busca todas las direcciones a la vez; las que no existen se devuelven en {@link UserLookup#getUnknown()}.
+     */
+    UserLookup findByEmails(Collection<String> emails);
     List<User> findAll();
     void deleteById(UUID id);
     void updateRole(UUID id, models.UserRole role);
+    void addChangeListener(UserChangeListener listener);
+
+    /**
+     * Devuelve la instancia compartida para el usuario recién leído de la base de datos.
+     * Sin caché, la propia instancia.
+     */
+    default User canonicalize(User loaded) {
+        return loaded;
+    }
 }
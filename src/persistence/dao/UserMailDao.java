@@ -1,17 +1,71 @@
 package persistence.dao;
 
+import models.FolderCounter;
 import models.Mail;
+import models.MailFlagUpdate;
+import models.MailboxChanges;
+import models.MailCursor;
+import models.MailPage;
 import models.User;
 import models.UserMail;
 import utils.MailFolder;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
 
 public interface UserMailDao {
     void save(UserMail userMail);
+    void saveAll(List<UserMail> userMails);
     void delete(User user, Mail mail);
     List<UserMail> findByUser(User user);
     List<UserMail> findByUserAndFolder(User user, MailFolder folder);
+    MailPage findPageByUserAndFolder(User user, MailFolder folder, MailCursor after, int limit);
+    MailCursor findCursor(User user, MailFolder folder, MailCursor after, int skip);
+    int countByUserAndFolder(User user, MailFolder folder);
+
+    /**
+     * Cabeceras de los correos indicados que están en el buzón del usuario, sin orden garantizado.
+     */
+    List<UserMail> findByUserAndMailIds(User user, Collection<UUID> mailIds);
     void markAsRead(User user, Mail mail);
     void markAsDeleted(User user, Mail mail);
+
+    /**
+     * Aplica varios cambios de marcas en un único lote.
+     */
+    void updateFlags(Collection<MailFlagUpdate> updates);
+
+    // Operaciones por conjunto: una sola sentencia, devuelven la cantidad de filas afectadas
+
+    int markAllAsRead(User user, Collection<UUID> mailIds, boolean read);
+    int markAllAsDeleted(User user, Collection<UUID> mailIds);
+
+    /**
+     * Registra un cambio del correo en sí (por ejemplo, un borrador editado) con un nuevo número de
+     * modificación, sin tocar las marcas del usuario.
+     */
+    int touch(User user, Collection<UUID> mailIds);
+    int deleteAll(User user, Collection<UUID> mailIds);
+    int moveAll(User user, Collection<UUID> mailIds, MailFolder target);
+    int markFolderAsRead(User user, MailFolder folder);
+    int deleteFolder(User user, MailFolder folder);
+
+    /**
+     * Contadores de las carpetas del usuario, mantenidos con cada cambio: no recorre los correos.
+     */
+    Map<MailFolder, FolderCounter> findFolderCounters(User user);
+
+    /**
+     * Número de modificación actual del buzón. Cada alta, cambio de marcas, movimiento o baja lo
+     * incrementa y lo guarda en las filas afectadas (o en su lápida, si se quitaron).
+     */
+    long findModseq(User user);
+
+    /**
+     * Correos agregados, modificados o quitados del buzón después de {@code modseq}, para transferir
+     * solo lo que cambió. Con limit 0 se devuelven todos; si hay más, el resultado queda incompleto.
+     */
+    MailboxChanges findChangesSince(User user, long modseq, int limit);
 }
@@ -0,0 +1,95 @@
+package persistence.impl;
+
+import config.ConnectionPool;
+import models.AddressUsage;
+import models.User;
+import persistence.dao.AddressUsageDao;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+public class AddressUsageDaoImpl implements AddressUsageDao {
+
+    private static final int BATCH_SIZE = 500;
+
+    private final ConnectionPool connectionPool;
+
+    public AddressUsageDaoImpl(ConnectionPool connectionPool) {
+        this.connectionPool = connectionPool;
+    }
+
+    @Override
+    public List<AddressUsage> findByUser(User user) {
+        String sql = "SELECT email, score, last_used, use_count FROM address_usage WHERE user_id = ?";
+        List<AddressUsage> usages = new ArrayList<>();
+        try (Connection connection = connectionPool.getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setObject(1, user.getId());
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    Timestamp lastUsed = rs.getTimestamp("last_used");
+                    usages.add(new AddressUsage(
+                            rs.getString("email"),
+                            rs.getDouble("score"),
+                            lastUsed != null ? lastUsed.toLocalDateTime() : null,
+                            rs.getInt("use_count")
+                    ));
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Error al cargar el historial de direcciones", e);
+        }
+        return usages;
+    }
+
+    @Override
+    public void saveAll(UUID userId, Collection<AddressUsage> usages) {
+        if (usages.isEmpty()) {
+            return;
+        }
+        String sql = """
+            MERGE INTO address_usage (user_id, email, score, last_used, use_count) KEY (user_id, email)
+            VALUES (?, ?, ?, ?, ?)
+        """;
+        try {
+            connectionPool.inTransaction(connection -> {
+                try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                    int pending = 0;
+                    for (AddressUsage usage : usages) {
+                        ps.setObject(1, userId);
+                        ps.setString(2, usage.getEmail());
+                        ps.setDouble(3, usage.getScoreKey());
+                        ps.setTimestamp(4, usage.getLastUsed() != null ? Timestamp.valueOf(usage.getLastUsed()) : null);
+                        ps.setInt(5, usage.getUseCount());
+                        ps.addBatch();
+                        if (++pending == BATCH_SIZE) {
+                            ps.executeBatch();
+                            pending = 0;
+                        }
+                    }
+                    if (pending > 0) {
+                        ps.executeBatch();
+                    }
+                }
+                return null;
+            });
+        } catch (SQLException e) {
+            throw new RuntimeException("Error al guardar el historial de direcciones", e);
+        }
+    }
+
+    @Override
+    public void deleteByUser(User user) {
+        String sql = "DELETE FROM address_usage WHERE user_id = ?";
+        try (Connection connection = connectionPool.getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setObject(1, user.getId());
+            ps.executeUpdate();
+        } catch (SQLException e) {
+            throw new RuntimeException("Error al limpiar el historial de direcciones", e);
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package persistence.impl;
+
+import models.User;
+import models.UserLookup;
+import models.UserRole;
+import persistence.dao.UserChangeListener;
+import persistence.dao.UserDao;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caché de lectura acotada (LRU) delante de otro UserDao, indexada por id y por email.
+ * Todas las cargas devuelven la misma instancia de User para un mismo id mientras siga en caché.
+ * La caché nunca modifica un User ya publicado: si la fila leída difiere, la instancia se reemplaza.
+ * Las cargas anotan la versión de la caché antes de consultar y no guardan lo leído si entretanto
+ * una escritura invalidó entradas, porque la lectura pudo ser anterior a esa escritura.
+ */
+public class CachingUserDao implements UserDao {
+
+    public static final int DEFAULT_MAX_SIZE = 10_000;
+
+    private final UserDao delegate;
+    private final int maxSize;
+    private final LinkedHashMap<UUID, User> byId;
+    private final Map<String, UUID> idsByEmail = new HashMap<>();
+    private long version;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public CachingUserDao(UserDao delegate) {
+        this(delegate, DEFAULT_MAX_SIZE);
+    }
+
+    public CachingUserDao(UserDao delegate, int maxSize) {
+        this.delegate = delegate;
+        this.maxSize = maxSize;
+        this.byId = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, User> eldest) {
+                if (size() > CachingUserDao.this.maxSize) {
+                    idsByEmail.remove(eldest.getValue().getEmail());
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    @Override
+    public void save(User user) {
+        try {
+            delegate.save(user);
+        } finally {
+            invalidate(user.getId(), user.getEmail());
+        }
+    }
+
+    @Override
+    public Optional<User> findById(UUID id) {
+        long seen;
+        synchronized (this) {
+            User cached = byId.get(id);
+            if (cached != null) {
+                hits.increment();
+                return Optional.of(cached);
+            }
+            seen = version;
+        }
+        misses.increment();
+        return delegate.findById(id).map(user -> canonicalize(user, seen));
+    }
+
+    @Override
+    public Optional<User> findByEmail(String email) {
+        long seen;
+        synchronized (this) {
+            UUID id = idsByEmail.get(email);
+            User cached = id != null ? byId.get(id) : null;
+            if (cached != null) {
+                hits.increment();
+                return Optional.of(cached);
+            }
+            seen = version;
+        }
+        misses.increment();
+        return delegate.findByEmail(email).map(user -> canonicalize(user, seen));
+    }
+
+    /**
+     * Las direcciones en caché se resuelven sin consultar; el resto se pide al delegado en un solo lote.
+     */
+    @Override
+    public UserLookup findByEmails(Collection<String> emails) {
+        Map<String, User> cached = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        long seen;
+        synchronized (this) {
+            seen = version;
+            for (String email : new LinkedHashSet<>(emails)) {
+                UUID id = idsByEmail.get(email);
+                User user = id != null ? byId.get(id) : null;
+                if (user != null) {
+                    cached.put(email, user);
+                } else {
+                    missing.add(email);
+                }
+            }
+        }
+        hits.add(cached.size());
+        misses.add(missing.size());
+
+        UserLookup loaded = missing.isEmpty() ? null : delegate.findByEmails(missing);
+        Map<String, User> found = new LinkedHashMap<>();
+        for (String email : new LinkedHashSet<>(emails)) {
+            User user = cached.get(email);
+            if (user == null && loaded != null) {
+                user = loaded.getFound().get(email);
+                if (user != null) {
+                    user = canonicalize(user, seen);
+                }
+            }
+            if (user != null) {
+                found.put(email, user);
+            }
+        }
+        return new UserLookup(found, loaded != null ? loaded.getUnknown() : List.of());
+    }
+
+    /**
+     * Recorre todo el directorio: solo se canonicalizan los usuarios que ya están en caché, para que
+     * un listado completo (por ejemplo, al abrir la ventana de redactar) no desaloje a los usados.
+     */
+    @Override
+    public List<User> findAll() {
+        long seen;
+        synchronized (this) {
+            seen = version;
+        }
+        List<User> all = delegate.findAll();
+        List<User> canonical = new ArrayList<>(all.size());
+        synchronized (this) {
+            for (User user : all) {
+                canonical.add(byId.containsKey(user.getId()) ? canonicalize(user, seen) : user);
+            }
+        }
+        return canonical;
+    }
+
+    @Override
+    public void deleteById(UUID id) {
+        try {
+            delegate.deleteById(id);
+        } finally {
+            invalidate(id, null);
+        }
+    }
+
+    @Override
+    public void updateRole(UUID id, UserRole role) {
+        try {
+            delegate.updateRole(id, role);
+        } finally {
+            invalidate(id, null);
+        }
+    }
+
+    @Override
+    public void addChangeListener(UserChangeListener listener) {
+        delegate.addChangeListener(listener);
+    }
+
+    /**
+     * Devuelve la instancia en caché para el id del usuario cargado si sus datos coinciden con los
+     * recién leídos; si no estaba o difiere, guarda y devuelve la cargada.
+     */
+    @Override
+    public synchronized User canonicalize(User loaded) {
+        return canonicalize(loaded, version);
+    }
+
+    /**
+     * Como {@link #canonicalize(User)}, para una lectura empezada con la caché en la versión
+     * {@code seen}: si desde entonces hubo invalidaciones, la fila leída puede ser anterior a la
+     * escritura y no se guarda. Se devuelve la instancia en caché si coincide y si no, la leída.
+     */
+    private synchronized User canonicalize(User loaded, long seen) {
+        User cached = byId.get(loaded.getId());
+        if (cached != null && (cached == loaded || sameData(cached, loaded))) {
+            return cached;
+        }
+        if (seen != version) {
+            return loaded;
+        }
+        if (cached != null) {
+            idsByEmail.remove(cached.getEmail());
+        }
+        // Se reemplaza en lugar de copiar los campos: otros hilos pueden estar leyendo la instancia anterior
+        byId.put(loaded.getId(), loaded);
+        idsByEmail.put(loaded.getEmail(), loaded.getId());
+        return loaded;
+    }
+
+    private static boolean sameData(User a, User b) {
+        return Objects.equals(a.getEmail(), b.getEmail())
+                && Objects.equals(a.getName(), b.getName())
+                && Objects.equals(a.getLastName(), b.getLastName())
+                && a.getRole() == b.getRole();
+    }
+
+    private synchronized void invalidate(UUID id, String email) {
+        version++;
+        User removed = id != null ? byId.remove(id) : null;
+        if (removed != null) {
+            idsByEmail.remove(removed.getEmail());
+        }
+        if (email != null) {
+            idsByEmail.remove(email);
+        }
+    }
+
+    public synchronized int size() {
+        return byId.size();
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    public String getStats() {
+        long h = hits.sum();
+        long m = misses.sum();
+        return String.format("usuarios=%d/%d, aciertos=%d, fallos=%d, desalojos=%d, tasa de acierto=%.1f%%",
+                size(), maxSize, h, m, evictions.sum(), h + m == 0 ? 0 : 100.0 * h / (h + m));
+    }
+}
@@ -1,5 +1,6 @@
 package persistence.impl;
 
+import config.ConnectionPool;
 import models.User;
 import persistence.dao.ContactBookDao;
 import persistence.dao.UserDao;
@@ -11,30 +12,12 @@ import java.util.Optional;
 import java.util.UUID;
 
 public class ContactBookDaoImpl implements ContactBookDao {
-    private final Connection connection;
+    private final ConnectionPool connectionPool;
     private final UserDao userDao;
 
-    public ContactBookDaoImpl(Connection connection, UserDao userDao) {
-        this.connection = connection;
+    public ContactBookDaoImpl(ConnectionPool connectionPool, UserDao userDao) {
+        this.connectionPool = connectionPool;
         this.userDao = userDao;
-        createTableIfNotExists();
-    }
-
-    private void createTableIfNotExists() {
-        String sql = """
-            CREATE TABLE IF NOT EXISTS contact_book (
-                user_id UUID NOT NULL,
-                contact_id UUID NOT NULL,
-                PRIMARY KEY (user_id, contact_id),
-                CONSTRAINT fk_user FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE,
-                CONSTRAINT fk_contact FOREIGN KEY (contact_id) REFERENCES users(id) ON DELETE CASCADE
-            );
-        """;
-        try (Statement stmt = connection.createStatement()) {
-            stmt.execute(sql);
-        } catch (SQLException e) {
-            throw new RuntimeException("Error creating contact_book table: " + e.getMessage(), e);
-        }
     }
 
     @Override
@@ -47,7 +30,8 @@ public class ContactBookDaoImpl implements ContactBookDao {
         }
         
         String sql = "INSERT INTO contact_book (user_id, contact_id) VALUES (?, ?)";
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+        try (Connection connection = connectionPool.getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql)) {
             ps.setObject(1, user.getId());
             ps.setObject(2, contact.getId());
             ps.executeUpdate();
@@ -71,7 +55,8 @@ public class ContactBookDaoImpl implements ContactBookDao {
         }
         
         String sql = "DELETE FROM contact_book WHERE user_id = ? AND contact_id = ?";
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+        try (Connection connection = connectionPool.getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql)) {
             ps.setObject(1, user.getId());
             ps.setObject(2, contact.getId());
             ps.executeUpdate();
@@ -88,7 +73,8 @@ public class ContactBookDaoImpl implements ContactBookDao {
         
         List<User> contacts = new ArrayList<>();
         String sql = "SELECT contact_id FROM contact_book WHERE user_id = ?";
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+        try (Connection connection = connectionPool.getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql)) {
             ps.setObject(1, user.getId());
             ResultSet rs = ps.executeQuery();
             while (rs.next()) {
@@ -109,7 +95,8 @@ public class ContactBookDaoImpl implements ContactBookDao {
         }
         
         String sql = "SELECT COUNT(*) FROM contact_book WHERE user_id = ? AND contact_id = ?";
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+        try (Connection connection = connectionPool.getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql)) {
             ps.setObject(1, user.getId());
             ps.setObject(2, contact.getId());
             ResultSet rs = ps.executeQuery();
@@ -0,0 +1,249 @@
+package persistence.impl;
+
+import config.ConnectionPool;
+import models.FolderCounter;
+import models.User;
+import persistence.dao.FolderCounterDao;
+import utils.MailFolder;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+public class FolderCounterDaoImpl implements FolderCounterDao {
+
+    private static final int BATCH_SIZE = 500;
+
+    /**
+     * Contadores de las filas de user_mails que cumplen el filtro, agrupados por usuario y carpeta.
+     */
+    private static final String AGGREGATE = """
+        SELECT um.user_id, um.folder, COUNT(*) AS total,
+               SUM(CASE WHEN COALESCE(um.is_read, FALSE) THEN 0 ELSE 1 END) AS unread,
+               SUM(COALESCE(LENGTH(m.subject), 0) + COALESCE(LENGTH(m.message), 0)) AS size_chars
+        FROM user_mails um
+        JOIN mails m ON m.id = um.mail_id
+        """;
+
+    private final ConnectionPool connectionPool;
+
+    public FolderCounterDaoImpl(ConnectionPool connectionPool) {
+        this.connectionPool = connectionPool;
+    }
+
+    @Override
+    public Map<MailFolder, FolderCounter> findByUser(User user) {
+        String sql = "SELECT user_id, folder, total, unread, size_chars FROM folder_counters WHERE user_id = ?";
+        Map<MailFolder, FolderCounter> counters = new EnumMap<>(MailFolder.class);
+        try (Connection connection = connectionPool.getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setObject(1, user.getId());
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    FolderCounter counter = map(rs);
+                    counters.put(counter.getFolder(), counter);
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Error al cargar los contadores de carpetas", e);
+        }
+        return counters;
+    }
+
+    @Override
+    public void applyDeltas(Collection<FolderCounter> deltas) {
+        List<FolderCounter> changes = combine(deltas);
+        if (changes.isEmpty()) {
+            return;
+        }
+        String sql = """
+            MERGE INTO folder_counters t
+            USING (VALUES (CAST(? AS UUID), CAST(? AS VARCHAR(20)), CAST(? AS BIGINT), CAST(? AS BIGINT), CAST(? AS BIGINT)))
+                AS d (user_id, folder, total, unread, size_chars)
+            ON t.user_id = d.user_id AND t.folder = d.folder
+            WHEN MATCHED THEN UPDATE SET total = t.total + d.total, unread = t.unread + d.unread,
+                                         size_chars = t.size_chars + d.size_chars
+            WHEN NOT MATCHED THEN INSERT (user_id, folder, total, unread, size_chars)
+                                  VALUES (d.user_id, d.folder, d.total, d.unread, d.size_chars)
+        """;
+        try {
+            connectionPool.inTransaction(connection -> {
+                try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                    int pending = 0;
+                    for (FolderCounter delta : changes) {
+                        ps.setObject(1, delta.getUserId());
+                        ps.setString(2, delta.getFolder().name());
+                        ps.setLong(3, delta.getTotal());
+                        ps.setLong(4, delta.getUnread());
+                        ps.setLong(5, delta.getSize());
+                        ps.addBatch();
+                        if (++pending == BATCH_SIZE) {
+                            ps.executeBatch();
+                            pending = 0;
+                        }
+                    }
+                    if (pending > 0) {
+                        ps.executeBatch();
+                    }
+                }
+                return null;
+            });
+        } catch (SQLException e) {
+            throw new RuntimeException("Error al actualizar los contadores de carpetas", e);
+        }
+    }
+
+    @Override
+    public <T> T track(Collection<UUID> userIds, Collection<UUID> mailIds, Supplier<T> change) {
+        if (userIds.isEmpty() || mailIds.isEmpty()) {
+            return change.get();
+        }
+        try {
+            return connectionPool.inTransaction(connection -> {
+                lockRows(connection, userIds, mailIds);
+                List<FolderCounter> before = aggregate(connection, userIds, mailIds);
+                T result = change.get();
+                List<FolderCounter> deltas = aggregate(connection, userIds, mailIds);
+                for (FolderCounter counter : before) {
+                    deltas.add(FolderCounter.empty(counter.getUserId(), counter.getFolder()).minus(counter));
+                }
+                applyDeltas(deltas);
+                return result;
+            });
+        } catch (SQLException e) {
+            throw new RuntimeException("Error al actualizar los contadores de carpetas", e);
+        }
+    }
+
+    /**
+     * Bloquea las filas hasta el fin de la transacción antes de medirlas: otra transacción que las
+     * cambie (por ejemplo, la escritura diferida de marcas y una operación en lote) espera a esta, y
+     * así ninguna cuenta dos veces la misma transición. Las agregaciones no admiten FOR UPDATE.
+     */
+    private static void lockRows(Connection connection, Collection<UUID> userIds, Collection<UUID> mailIds) throws SQLException {
+        String sql = "SELECT um.user_id FROM user_mails um WHERE um.user_id = ANY(?) AND um.mail_id = ANY(?) FOR UPDATE";
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setArray(1, connection.createArrayOf("UUID", userIds.toArray()));
+            ps.setArray(2, connection.createArrayOf("UUID", mailIds.toArray()));
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    // Solo interesa el bloqueo
+                }
+            }
+        }
+    }
+
+    private List<FolderCounter> aggregate(Connection connection, Collection<UUID> userIds, Collection<UUID> mailIds) throws SQLException {
+        String sql = AGGREGATE + " WHERE um.user_id = ANY(?) AND um.mail_id = ANY(?) GROUP BY um.user_id, um.folder";
+        List<FolderCounter> counters = new ArrayList<>();
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setArray(1, connection.createArrayOf("UUID", userIds.toArray()));
+            ps.setArray(2, connection.createArrayOf("UUID", mailIds.toArray()));
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    counters.add(map(rs));
+                }
+            }
+        }
+        return counters;
+    }
+
+    @Override
+    public void resetUnread(UUID userId, MailFolder folder) {
+        update("UPDATE folder_counters SET unread = 0 WHERE user_id = ? AND folder = ?", userId, folder);
+    }
+
+    @Override
+    public void clear(UUID userId, MailFolder folder) {
+        update("DELETE FROM folder_counters WHERE user_id = ? AND folder = ?", userId, folder);
+    }
+
+    private void update(String sql, UUID userId, MailFolder folder) {
+        try {
+            connectionPool.inTransaction(connection -> {
+                try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                    ps.setObject(1, userId);
+                    ps.setString(2, folder.name());
+                    return ps.executeUpdate();
+                }
+            });
+        } catch (SQLException e) {
+            throw new RuntimeException("Error al actualizar los contadores de carpetas", e);
+        }
+    }
+
+    @Override
+    public int rebuild() {
+        try {
+            return connectionPool.inTransaction(connection -> {
+                Map<List<Object>, FolderCounter> stored = new HashMap<>();
+                try (PreparedStatement ps = connection.prepareStatement("SELECT user_id, folder, total, unread, size_chars FROM folder_counters");
+                     ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        FolderCounter counter = map(rs);
+                        stored.put(List.of(counter.getUserId(), counter.getFolder()), counter);
+                    }
+                }
+
+                int wrong = 0;
+                List<FolderCounter> actual = new ArrayList<>();
+                try (PreparedStatement ps = connection.prepareStatement(AGGREGATE + " GROUP BY um.user_id, um.folder");
+                     ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        FolderCounter counter = map(rs);
+                        actual.add(counter);
+                        if (!counter.equals(stored.remove(List.of(counter.getUserId(), counter.getFolder())))) {
+                            wrong++;
+                        }
+                    }
+                }
+                for (FolderCounter leftover : stored.values()) {
+                    if (!leftover.isZero()) {
+                        wrong++;
+                    }
+                }
+
+                try (Statement statement = connection.createStatement()) {
+                    statement.executeUpdate("DELETE FROM folder_counters");
+                }
+                applyDeltas(actual);
+                return wrong;
+            });
+        } catch (SQLException e) {
+            throw new RuntimeException("Error al recalcular los contadores de carpetas", e);
+        }
+    }
+
+    /**
+     * Suma las diferencias de una misma carpeta y descarta las que se anulan.
+     */
+    private static List<FolderCounter> combine(Collection<FolderCounter> deltas) {
+        Map<List<Object>, FolderCounter> combined = new HashMap<>();
+        for (FolderCounter delta : deltas) {
+            combined.merge(List.of(delta.getUserId(), delta.getFolder()), delta, FolderCounter::plus);
+        }
+        List<FolderCounter> changes = new ArrayList<>(combined.size());
+        for (FolderCounter delta : combined.values()) {
+            if (!delta.isZero()) {
+                changes.add(delta);
+            }
+        }
+        return changes;
+    }
+
+    private static FolderCounter map(ResultSet rs) throws SQLException {
+        return new FolderCounter(
+                UUID.fromString(rs.getString("user_id")),
+                MailFolder.valueOf(rs.getString("folder")),
+                rs.getLong("total"),
+                rs.getLong("unread"),
+                rs.getLong("size_chars")
+        );
+    }
+}
@@ -0,0 +1,83 @@
+package persistence.impl;
+
+import models.Mail;
+import models.RecipientType;
+import models.User;
+import persistence.dao.UserDao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Carga y guarda las filas tipadas (TO/CC/BCC) de mail_recipients.
+ */
+final class MailRecipientRows {
+
+    private MailRecipientRows() {
+    }
+
+    /**
+     * Resuelve en una sola consulta todos los destinatarios de los correos indicados y los reparte
+     * en recipients/cc/bcc. Si se indica un lector, las copias ocultas solo se devuelven en los
+     * correos que él mismo envió.
+     */
+    static void load(Connection connection, Map<UUID, Mail> mailsById, Map<UUID, User> users, UserDao userDao, UUID viewerId) throws SQLException {
+        if (mailsById.isEmpty()) {
+            return;
+        }
+        String sql = """
+            SELECT mr.mail_id, mr.recipient_type,
+                   u.id AS recipient_id, u.name AS recipient_name, u.last_name AS recipient_last_name,
+                   u.email AS recipient_email, u.role AS recipient_role
+            FROM mail_recipients mr
+            JOIN users u ON u.id = mr.recipient_id
+            JOIN mails m ON m.id = mr.mail_id
+            WHERE mr.mail_id = ANY(?)
+              AND (? IS NULL OR mr.recipient_type <> 'BCC' OR m.sender_id = ?)
+        """;
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setArray(1, connection.createArrayOf("UUID", mailsById.keySet().toArray()));
+            ps.setObject(2, viewerId);
+            ps.setObject(3, viewerId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    Mail mail = mailsById.get(UUID.fromString(rs.getString("mail_id")));
+                    User recipient = UserRowMapper.map(rs, "recipient_", users, userDao);
+                    switch (RecipientType.valueOf(rs.getString("recipient_type"))) {
+                        case TO -> mail.getRecipients().add(recipient);
+                        case CC -> mail.getCc().add(recipient);
+                        case BCC -> mail.getBcc().add(recipient);
+                    }
+                }
+            }
+        }
+    }
+
+    static void insert(Connection connection, Mail mail) throws SQLException {
+        String sql = "INSERT INTO mail_recipients (mail_id, recipient_id, recipient_type) VALUES (?, ?, ?)";
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            addBatch(ps, mail, mail.getRecipients(), RecipientType.TO);
+            addBatch(ps, mail, mail.getCc(), RecipientType.CC);
+            addBatch(ps, mail, mail.getBcc(), RecipientType.BCC);
+            ps.executeBatch();
+        }
+    }
+
+    private static void addBatch(PreparedStatement ps, Mail mail, Iterable<User> users, RecipientType type) throws SQLException {
+        Set<UUID> seen = new HashSet<>();
+        for (User user : users) {
+            if (seen.add(user.getId())) {
+                ps.setObject(1, mail.getId());
+                ps.setObject(2, user.getId());
+                ps.setString(3, type.name());
+                ps.addBatch();
+            }
+        }
+    }
+}
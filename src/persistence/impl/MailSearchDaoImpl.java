@@ -0,0 +1,296 @@
+package persistence.impl;
+
+import config.ConnectionPool;
+import models.Mail;
+import models.Posting;
+import models.User;
+import persistence.dao.MailSearchDao;
+import utils.MailFolder;
+import utils.TextTokenizer;
+
+import java.sql.*;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+public class MailSearchDaoImpl implements MailSearchDao {
+
+    private static final int BATCH_SIZE = 500;
+
+    /**
+     * Un correo listo para insertar en el índice.
+     */
+    private static final class Document {
+        private final UUID mailId;
+        private final LocalDateTime mailDate;
+        private final int length;
+        private final Map<String, TermEntry> terms = new LinkedHashMap<>();
+
+        /**
+         * Las posiciones del cuerpo siguen a las del asunto dejando un hueco, para que una frase no
+         * pueda empezar en el asunto y terminar en el cuerpo.
+         */
+        private Document(UUID mailId, LocalDateTime mailDate, String subject, String body) {
+            this.mailId = mailId;
+            this.mailDate = mailDate;
+            List<String> subjectTerms = TextTokenizer.tokenize(subject);
+            List<String> bodyTerms = TextTokenizer.tokenize(body);
+            this.length = subjectTerms.size() + bodyTerms.size();
+            for (int i = 0; i < subjectTerms.size(); i++) {
+                terms.computeIfAbsent(subjectTerms.get(i), t -> new TermEntry()).add(i, true);
+            }
+            int offset = subjectTerms.size() + 1;
+            for (int i = 0; i < bodyTerms.size(); i++) {
+                terms.computeIfAbsent(bodyTerms.get(i), t -> new TermEntry()).add(offset + i, false);
+            }
+        }
+    }
+
+    private static final class TermEntry {
+        private int subjectFrequency;
+        private int bodyFrequency;
+        private final List<Integer> positions = new ArrayList<>();
+
+        private void add(int position, boolean subject) {
+            if (subject) {
+                subjectFrequency++;
+            } else {
+                bodyFrequency++;
+            }
+            positions.add(position);
+        }
+    }
+
+    private final ConnectionPool connectionPool;
+
+    public MailSearchDaoImpl(ConnectionPool connectionPool) {
+        this.connectionPool = connectionPool;
+    }
+
+    @Override
+    public void index(Collection<Mail> mails) {
+        List<Document> documents = new ArrayList<>(mails.size());
+        for (Mail mail : mails) {
+            documents.add(new Document(mail.getId(), mail.getDate(), mail.getSubject(), mail.getMessage()));
+        }
+        write(documents);
+    }
+
+    @Override
+    public int reindex(Collection<UUID> mailIds) {
+        if (mailIds.isEmpty()) {
+            return 0;
+        }
+        String sql = "SELECT id, subject, message, mail_date FROM mails WHERE id = ANY(?)";
+        List<Document> documents = new ArrayList<>(mailIds.size());
+        try (Connection connection = connectionPool.getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setArray(1, connection.createArrayOf("UUID", mailIds.toArray()));
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    Timestamp mailDate = rs.getTimestamp("mail_date");
+                    documents.add(new Document(
+                            UUID.fromString(rs.getString("id")),
+                            mailDate != null ? mailDate.toLocalDateTime() : null,
+                            rs.getString("subject"),
+                            rs.getString("message")
+                    ));
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Error al leer los correos a indexar", e);
+        }
+        write(documents);
+        return documents.size();
+    }
+
+    private void write(List<Document> documents) {
+        if (documents.isEmpty()) {
+            return;
+        }
+        String docSql = "INSERT INTO search_docs (mail_id, length, mail_date) VALUES (?, ?, ?)";
+        String termSql = "INSERT INTO search_terms (term, mail_id, subject_tf, body_tf, positions) VALUES (?, ?, ?, ?, ?)";
+        List<UUID> ids = new ArrayList<>(documents.size());
+        for (Document document : documents) {
+            ids.add(document.mailId);
+        }
+        try {
+            connectionPool.inTransaction(connection -> {
+                delete(connection, ids);
+                try (PreparedStatement docPs = connection.prepareStatement(docSql);
+                     PreparedStatement termPs = connection.prepareStatement(termSql)) {
+                    int pending = 0;
+                    for (Document document : documents) {
+                        docPs.setObject(1, document.mailId);
+                        docPs.setInt(2, document.length);
+                        docPs.setTimestamp(3, document.mailDate != null ? Timestamp.valueOf(document.mailDate) : null);
+                        docPs.addBatch();
+                        for (Map.Entry<String, TermEntry> entry : document.terms.entrySet()) {
+                            TermEntry term = entry.getValue();
+                            termPs.setString(1, entry.getKey());
+                            termPs.setObject(2, document.mailId);
+                            termPs.setInt(3, term.subjectFrequency);
+                            termPs.setInt(4, term.bodyFrequency);
+                            termPs.setArray(5, connection.createArrayOf("INTEGER", term.positions.toArray()));
+                            termPs.addBatch();
+                            if (++pending == BATCH_SIZE) {
+                                termPs.executeBatch();
+                                pending = 0;
+                            }
+                        }
+                    }
+                    docPs.executeBatch();
+                    if (pending > 0) {
+                        termPs.executeBatch();
+                    }
+                }
+                return null;
+            });
+        } catch (SQLException e) {
+            throw new RuntimeException("Error al indexar los correos", e);
+        }
+    }
+
+    @Override
+    public void remove(Collection<UUID> mailIds) {
+        if (mailIds.isEmpty()) {
+            return;
+        }
+        try {
+            connectionPool.inTransaction(connection -> {
+                delete(connection, mailIds);
+                return null;
+            });
+        } catch (SQLException e) {
+            throw new RuntimeException("Error al quitar los correos del índice", e);
+        }
+    }
+
+    private static void delete(Connection connection, Collection<UUID> mailIds) throws SQLException {
+        Array ids = connection.createArrayOf("UUID", mailIds.toArray());
+        try (PreparedStatement termPs = connection.prepareStatement("DELETE FROM search_terms WHERE mail_id = ANY(?)");
+             PreparedStatement docPs = connection.prepareStatement("DELETE FROM search_docs WHERE mail_id = ANY(?)")) {
+            termPs.setArray(1, ids);
+            termPs.executeUpdate();
+            docPs.setArray(1, ids);
+            docPs.executeUpdate();
+        }
+    }
+
+    @Override
+    public Map<UUID, Posting> findPostings(User user, MailFolder folder, String term, boolean withPositions) {
+        String sql = """
+            SELECT st.mail_id, st.subject_tf, st.body_tf, sd.length, sd.mail_date""" + (withPositions ? ", st.positions" : "") + """
+
+            FROM search_terms st
+            JOIN user_mails um ON um.user_id = ? AND um.mail_id = st.mail_id
+            JOIN search_docs sd ON sd.mail_id = st.mail_id
+            WHERE st.term = ?""" + (folder != null ? " AND um.folder = ?" : "");
+
+        Map<UUID, Posting> postings = new HashMap<>();
+        try (Connection connection = connectionPool.getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setObject(1, user.getId());
+            ps.setString(2, term);
+            if (folder != null) {
+                ps.setString(3, folder.name());
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    UUID mailId = rs.getObject("mail_id", UUID.class);
+                    Timestamp mailDate = rs.getTimestamp("mail_date");
+                    postings.put(mailId, new Posting(
+                            mailId,
+                            rs.getInt("subject_tf"),
+                            rs.getInt("body_tf"),
+                            withPositions ? toInts(rs.getArray("positions")) : null,
+                            rs.getInt("length"),
+                            mailDate != null ? mailDate.toLocalDateTime() : null
+                    ));
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Error al buscar el término '" + term + "'", e);
+        }
+        return postings;
+    }
+
+    private static int[] toInts(Array array) throws SQLException {
+        if (array == null) {
+            return new int[0];
+        }
+        Object[] values = (Object[]) array.getArray();
+        int[] positions = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            positions[i] = ((Number) values[i]).intValue();
+        }
+        return positions;
+    }
+
+    @Override
+    public double averageLength() {
+        try (Connection connection = connectionPool.getConnection();
+             PreparedStatement ps = connection.prepareStatement("SELECT AVG(CAST(length AS DOUBLE)) FROM search_docs");
+             ResultSet rs = ps.executeQuery()) {
+            return rs.next() ? rs.getDouble(1) : 0;
+        } catch (SQLException e) {
+            throw new RuntimeException("Error al calcular la longitud media de los correos", e);
+        }
+    }
+
+    @Override
+    public List<UUID> findMailIdsAfter(UUID after, int limit) {
+        return findIds(false, after, limit);
+    }
+
+    @Override
+    public List<UUID> findUnindexedMailIdsAfter(UUID after, int limit) {
+        return findIds(true, after, limit);
+    }
+
+    private List<UUID> findIds(boolean onlyUnindexed, UUID after, int limit) {
+        List<String> conditions = new ArrayList<>();
+        if (onlyUnindexed) {
+            conditions.add("NOT EXISTS (SELECT 1 FROM search_docs d WHERE d.mail_id = m.id)");
+        }
+        if (after != null) {
+            conditions.add("m.id > ?");
+        }
+        String sql = "SELECT m.id FROM mails m" + (conditions.isEmpty() ? "" : " WHERE " + String.join(" AND ", conditions))
+                + " ORDER BY m.id LIMIT ?";
+        List<UUID> ids = new ArrayList<>(limit);
+        try (Connection connection = connectionPool.getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql)) {
+            int index = 1;
+            if (after != null) {
+                ps.setObject(index++, after);
+            }
+            ps.setInt(index, limit);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    ids.add(UUID.fromString(rs.getString("id")));
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Error al recorrer los correos", e);
+        }
+        return ids;
+    }
+
+    @Override
+    public void clear() {
+        // TRUNCATE no registra cada fila borrada: vaciar un índice grande con DELETE tarda minutos
+        try (Connection connection = connectionPool.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.executeUpdate("TRUNCATE TABLE search_terms");
+            statement.executeUpdate("TRUNCATE TABLE search_docs");
+        } catch (SQLException e) {
+            throw new RuntimeException("Error al vaciar el índice de búsqueda", e);
+        }
+    }
+}
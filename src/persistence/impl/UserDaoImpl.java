@@ -1,55 +1,38 @@
 package persistence.impl;
 
-
+import config.ConnectionPool;
 import models.User;
-import models.UserRole;
+import models.UserLookup;
+import persistence.dao.UserChangeListener;
 import persistence.dao.UserDao;
 
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class UserDaoImpl implements UserDao {
 
-    private final Connection connection;
+    private static final int CHUNK_SIZE = 500;
 
-    public UserDaoImpl(Connection connection) {
-        this.connection = connection;
-        createTableIfNotExists();
-    }
+    private final ConnectionPool connectionPool;
+    private final List<UserChangeListener> listeners = new CopyOnWriteArrayList<>();
 
-    private void createTableIfNotExists() {
-        String sql = """
-            CREATE TABLE IF NOT EXISTS users (
-                id UUID PRIMARY KEY,
-                name VARCHAR(100),
-                last_name VARCHAR(100),
-                email VARCHAR(100) UNIQUE,
-                role VARCHAR(20) DEFAULT 'USER'
-            )
-        """;
-        try (Statement stmt = connection.createStatement()) {
-            stmt.execute(sql);
-
-            try {
-                stmt.execute("ALTER TABLE users ADD COLUMN role VARCHAR(20) DEFAULT 'USER'");
-            } catch (SQLException e) {
-                // La columna ya existe, ignorar el error
-            }
-        } catch (SQLException e) {
-            throw new RuntimeException("Error al crear la tabla de usuarios", e);
-        }
+    public UserDaoImpl(ConnectionPool connectionPool) {
+        this.connectionPool = connectionPool;
     }
 
     @Override
     public void save(User user) {
         String sql = "INSERT INTO users (id, name, last_name, email, role) VALUES (?, ?, ?, ?, ?)";
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+        try (Connection connection = connectionPool.getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql)) {
             ps.setObject(1, user.getId());
             ps.setString(2, user.getName());
             ps.setString(3, user.getLastName());
             ps.setString(4, user.getEmail());
             ps.setString(5, user.getRole().name());
             ps.executeUpdate();
+            listeners.forEach(listener -> listener.userSaved(user));
         }  catch (SQLException e) {
             if (e.getErrorCode() == 23505 || e.getMessage().contains("Unique index")) {
                 throw new RuntimeException("⚠️ No se pudo guardar el usuario: ya existe un email igual: " + user.getEmail());
@@ -63,7 +46,8 @@ public class UserDaoImpl implements UserDao {
     @Override
     public Optional<User> findById(UUID id) {
         String sql = "SELECT * FROM users WHERE id = ?";
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+        try (Connection connection = connectionPool.getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql)) {
             ps.setObject(1, id);
             ResultSet rs = ps.executeQuery();
             if (rs.next()) {
@@ -78,7 +62,8 @@ public class UserDaoImpl implements UserDao {
     @Override
     public Optional<User> findByEmail(String email) {
         String sql = "SELECT * FROM users WHERE email = ?";
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+        try (Connection connection = connectionPool.getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql)) {
             ps.setString(1, email);
             ResultSet rs = ps.executeQuery();
             if (rs.next()) {
@@ -90,11 +75,53 @@ public class UserDaoImpl implements UserDao {
         return Optional.empty();
     }
 
+    /**
+     * Resuelve las direcciones con consultas IN de hasta CHUNK_SIZE parámetros cada una.
+     */
+    @Override
+    public UserLookup findByEmails(Collection<String> emails) {
+        List<String> requested = new ArrayList<>(new LinkedHashSet<>(emails));
+        Map<String, User> byEmail = new HashMap<>();
+
+        try (Connection connection = connectionPool.getConnection()) {
+            for (int from = 0; from < requested.size(); from += CHUNK_SIZE) {
+                List<String> chunk = requested.subList(from, Math.min(from + CHUNK_SIZE, requested.size()));
+                String sql = "SELECT * FROM users WHERE email IN (" + String.join(", ", Collections.nCopies(chunk.size(), "?")) + ")";
+                try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                    for (int i = 0; i < chunk.size(); i++) {
+                        ps.setString(i + 1, chunk.get(i));
+                    }
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            User user = mapRow(rs);
+                            byEmail.put(user.getEmail(), user);
+                        }
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Error al buscar usuarios por email", e);
+        }
+
+        Map<String, User> found = new LinkedHashMap<>();
+        List<String> unknown = new ArrayList<>();
+        for (String email : requested) {
+            User user = byEmail.get(email);
+            if (user != null) {
+                found.put(email, user);
+            } else {
+                unknown.add(email);
+            }
+        }
+        return new UserLookup(found, unknown);
+    }
+
     @Override
     public List<User> findAll() {
         String sql = "SELECT * FROM users";
         List<User> users = new ArrayList<>();
-        try (Statement stmt = connection.createStatement()) {
+        try (Connection connection = connectionPool.getConnection();
+             Statement stmt = connection.createStatement()) {
             ResultSet rs = stmt.executeQuery(sql);
             while (rs.next()) {
                 users.add(mapRow(rs));
@@ -108,9 +135,12 @@ public class UserDaoImpl implements UserDao {
     @Override
     public void deleteById(UUID id) {
         String sql = "DELETE FROM users WHERE id = ?";
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+        try (Connection connection = connectionPool.getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql)) {
             ps.setObject(1, id);
-            ps.executeUpdate();
+            if (ps.executeUpdate() > 0) {
+                listeners.forEach(listener -> listener.userDeleted(id));
+            }
         } catch (SQLException e) {
             throw new RuntimeException("Error al eliminar el usuario", e);
         }
@@ -119,7 +149,8 @@ public class UserDaoImpl implements UserDao {
     @Override
     public void updateRole(UUID id, models.UserRole role) {
         String sql = "UPDATE users SET role = ? WHERE id = ?";
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+        try (Connection connection = connectionPool.getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql)) {
             ps.setString(1, role.name());
             ps.setObject(2, id);
             ps.executeUpdate();
@@ -128,17 +159,12 @@ public class UserDaoImpl implements UserDao {
         }
     }
 
+    @Override
+    public void addChangeListener(UserChangeListener listener) {
+        listeners.add(listener);
+    }
+
     private User mapRow(ResultSet rs) throws SQLException {
-        String roleStr = rs.getString("role");
-        UserRole role = (roleStr != null) ? UserRole.valueOf(roleStr) : UserRole.USER;
-        
-        return new User(
-                UUID.fromString(rs.getString("id")),
-                rs.getString("name"),
-                rs.getString("last_name"),
-                rs.getString("email"),
-                role
-        );
+        return UserRowMapper.map(rs, "");
     }
 }
-
@@ -1,63 +1,115 @@
 package persistence.impl;
 
+import config.ConnectionPool;
+import models.FolderCounter;
 import models.Mail;
+import models.MailFlagUpdate;
+import models.MailboxChanges;
+import models.MailCursor;
+import models.MailPage;
 import models.User;
 import models.UserMail;
+import persistence.dao.FolderCounterDao;
 import persistence.dao.UserDao;
 import persistence.dao.UserMailDao;
 import utils.MailFolder;
 
 import java.sql.*;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.UUID;
 
 public class UserMailDaoImpl implements UserMailDao {
 
-    private final Connection connection;
+    private static final int BATCH_SIZE = 500;
+
+    private final ConnectionPool connectionPool;
     private final UserDao userDao;
+    private final FolderCounterDao folderCounterDao;
 
-    public UserMailDaoImpl(Connection connection, UserDao userDao) {
-        this.connection = connection;
+    /**
+     * Cada cambio de user_mails actualiza los contadores de carpeta en su misma transacción.
+     */
+    public UserMailDaoImpl(ConnectionPool connectionPool, UserDao userDao, FolderCounterDao folderCounterDao) {
+        this.connectionPool = connectionPool;
         this.userDao = userDao;
-        createTableIfNotExists();
+        this.folderCounterDao = folderCounterDao;
     }
 
-    private void createTableIfNotExists() {
-        String sql = """
-            CREATE TABLE IF NOT EXISTS user_mails (
-                user_id UUID,
-                mail_id UUID,
-                folder VARCHAR(20),
-                is_read BOOLEAN,
-                is_deleted BOOLEAN,
-                PRIMARY KEY (user_id, mail_id)
-            );
-        """;
-        try (Statement stmt = connection.createStatement()) {
-            stmt.execute(sql);
+    @Override
+    public void save(UserMail userMail) {
+        try {
+            connectionPool.inTransaction(connection -> {
+                insertAll(connection, List.of(userMail));
+                return null;
+            });
         } catch (SQLException e) {
-            throw new RuntimeException("Error al crear la tabla user_mails", e);
+            throw new RuntimeException("Error al guardar el correo del usuario", e);
         }
     }
 
+    /**
+     * Inserta todas las copias con JDBC batch, enviando el lote cada BATCH_SIZE filas.
+     * No confirma por su cuenta: si hay una transacción en curso forma parte de ella.
+     */
     @Override
-    public void save(UserMail userMail) {
+    public void saveAll(List<UserMail> userMails) {
+        if (userMails.isEmpty()) {
+            return;
+        }
+        try {
+            connectionPool.inTransaction(connection -> {
+                insertAll(connection, userMails);
+                return null;
+            });
+        } catch (SQLException e) {
+            throw new RuntimeException("Error al guardar los correos de los usuarios", e);
+        }
+    }
+
+    private void insertAll(Connection connection, List<UserMail> userMails) throws SQLException {
         String sql = """
-            INSERT INTO user_mails (user_id, mail_id, folder, is_read, is_deleted)
-            VALUES (?, ?, ?, ?, ?)
+            INSERT INTO user_mails (user_id, mail_id, folder, is_read, is_deleted, modseq, mail_date)
+            VALUES (?, ?, ?, ?, ?, ?, ?)
         """;
+        Set<UUID> userIds = new HashSet<>();
+        for (UserMail userMail : userMails) {
+            userIds.add(userMail.getUser().getId());
+        }
+        Map<UUID, Long> modseqs = nextModseq(connection, userIds);
         try (PreparedStatement ps = connection.prepareStatement(sql)) {
-            ps.setObject(1, userMail.getUser().getId());
-            ps.setObject(2, userMail.getMail().getId());
-            ps.setString(3, userMail.getFolder().name());
-            ps.setBoolean(4, userMail.isRead());
-            ps.setBoolean(5, userMail.isDeleted());
-            ps.executeUpdate();
-        } catch (SQLException e) {
-            throw new RuntimeException("Error al guardar el correo del usuario", e);
+            int pending = 0;
+            for (UserMail userMail : userMails) {
+                ps.setObject(1, userMail.getUser().getId());
+                ps.setObject(2, userMail.getMail().getId());
+                ps.setString(3, userMail.getFolder().name());
+                ps.setBoolean(4, userMail.isRead());
+                ps.setBoolean(5, userMail.isDeleted());
+                ps.setLong(6, modseqs.get(userMail.getUser().getId()));
+                ps.setTimestamp(7, Timestamp.valueOf(userMail.getMail().getDate()));
+                ps.addBatch();
+                if (++pending == BATCH_SIZE) {
+                    ps.executeBatch();
+                    pending = 0;
+                }
+            }
+            if (pending > 0) {
+                ps.executeBatch();
+            }
+        }
+        List<FolderCounter> deltas = new ArrayList<>(userMails.size());
+        for (UserMail userMail : userMails) {
+            deltas.add(FolderCounter.of(userMail));
         }
+        folderCounterDao.applyDeltas(deltas);
     }
 
     @Override
@@ -67,61 +119,187 @@ public class UserMailDaoImpl implements UserMailDao {
 
     @Override
     public List<UserMail> findByUserAndFolder(User user, MailFolder folder) {
-        List<UserMail> result = new ArrayList<>();
+        try (Connection connection = connectionPool.getConnection()) {
+            return loadHeaders(connection, user, folder, null, null, 0, 0);
+        } catch (SQLException e) {
+            throw new RuntimeException("Error al cargar los correos del usuario", e);
+        }
+    }
+
+    @Override
+    public MailPage findPageByUserAndFolder(User user, MailFolder folder, MailCursor after, int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("El tamaño de página debe ser positivo");
+        }
+        try (Connection connection = connectionPool.getConnection()) {
+            // Se pide una fila de más para saber si existe una página siguiente sin otra consulta
+            List<UserMail> items = loadHeaders(connection, user, folder, null, after, 0, limit + 1);
+            if (items.size() <= limit) {
+                return new MailPage(items, null);
+            }
+            items = new ArrayList<>(items.subList(0, limit));
+            return new MailPage(items, MailCursor.of(items.get(limit - 1).getMail()));
+        } catch (SQLException e) {
+            throw new RuntimeException("Error al cargar la página de correos del usuario", e);
+        }
+    }
+
+    @Override
+    public MailCursor findCursor(User user, MailFolder folder, MailCursor after, int skip) {
         String sql = """
-        SELECT um.*, m.subject, m.message, m.sender_id, m.id as mail_id
-        FROM user_mails um
-        JOIN mails m ON um.mail_id = m.id
-        WHERE um.user_id = ?""" + (folder != null ? " AND um.folder = ?" : "");
+            SELECT um.mail_date, um.mail_id
+            FROM user_mails um
+            WHERE um.user_id = ?""" + folderFilter(folder) + seekFilter(after) + orderBy(folder) + " LIMIT 1 OFFSET ?";
 
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
-            ps.setObject(1, user.getId());
-            if (folder != null) ps.setString(2, folder.name());
-
-            ResultSet rs = ps.executeQuery();
-            while (rs.next()) {
-                UUID mailId = UUID.fromString(rs.getString("mail_id"));
-                UUID senderId = UUID.fromString(rs.getString("sender_id"));
-                Optional<User> sender = userDao.findById(senderId);
-
-                List<User> recipients = new ArrayList<>();
-                String recipientsSql = "SELECT recipient_id FROM mail_recipients WHERE mail_id = ?";
-                try (PreparedStatement recipientsPs = connection.prepareStatement(recipientsSql)) {
-                    recipientsPs.setObject(1, mailId);
-                    ResultSet recipientsRs = recipientsPs.executeQuery();
-                    while (recipientsRs.next()) {
-                        UUID recipientId = UUID.fromString(recipientsRs.getString("recipient_id"));
-                        userDao.findById(recipientId).ifPresent(recipients::add);
-                    }
+        try (Connection connection = connectionPool.getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql)) {
+            int index = bindFilters(ps, user, folder, after);
+            ps.setInt(index, Math.max(0, skip));
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    return new MailCursor(rs.getTimestamp("mail_date").toLocalDateTime(), UUID.fromString(rs.getString("mail_id")));
                 }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Error al posicionar el cursor de la carpeta", e);
+        }
+        return null;
+    }
 
-                Mail mail = new Mail(
-                        mailId,
-                        sender.orElse(null),
-                        recipients,
-                        List.of(),
-                        List.of(),
-                        null,
-                        rs.getString("subject"),
-                        rs.getString("message")
-                );
-
-                UserMail userMail = new UserMail(user, mail, MailFolder.valueOf(rs.getString("folder")));
-                if (rs.getBoolean("is_read")) userMail.setRead(true);
-                if (rs.getBoolean("is_deleted")) userMail.markAsDeleted();
-
-                result.add(userMail);
+    @Override
+    public int countByUserAndFolder(User user, MailFolder folder) {
+        String sql = "SELECT COUNT(*) FROM user_mails um WHERE um.user_id = ?" + folderFilter(folder);
+        try (Connection connection = connectionPool.getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql)) {
+            bindFilters(ps, user, folder, null);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
             }
+        } catch (SQLException e) {
+            throw new RuntimeException("Error al contar los correos de la carpeta", e);
+        }
+    }
+
+    @Override
+    public List<UserMail> findByUserAndMailIds(User user, Collection<UUID> mailIds) {
+        if (mailIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        try (Connection connection = connectionPool.getConnection()) {
+            return loadHeaders(connection, user, null, mailIds, null, 0, 0);
         } catch (SQLException e) {
             throw new RuntimeException("Error al cargar los correos del usuario", e);
         }
+    }
+
+    /**
+     * Carga las cabeceras (con remitente) de la carpeta y después todos sus destinatarios TO/CC/BCC
+     * en una sola consulta. El cuerpo no se lee: se pide con MailDao al abrir el correo.
+     * Con limit 0 se carga la carpeta completa; con changedAfter mayor que 0, solo las filas
+     * modificadas después de ese número.
+     */
+    private List<UserMail> loadHeaders(Connection connection, User user, MailFolder folder, Collection<UUID> mailIds,
+                                       MailCursor after, long changedAfter, int limit) throws SQLException {
+        String sql = """
+            SELECT um.folder, um.is_read, um.is_deleted,
+                   m.id AS mail_id, m.subject, m.mail_date,
+                   s.id AS sender_id, s.name AS sender_name, s.last_name AS sender_last_name,
+                   s.email AS sender_email, s.role AS sender_role
+            """ + (mailIds != null
+                // Partir de los ids fuerza la búsqueda por clave primaria en vez de recorrer el buzón
+                ? "FROM UNNEST(?) AS ids(id) JOIN user_mails um ON um.mail_id = ids.id"
+                : "FROM user_mails um") + """
+
+            JOIN mails m ON um.mail_id = m.id
+            LEFT JOIN users s ON s.id = m.sender_id
+            WHERE um.user_id = ?""" + folderFilter(folder) + seekFilter(after) + (changedAfter > 0 ? " AND um.modseq > ?" : "")
+                + orderBy(folder) + (limit > 0 ? " LIMIT ?" : "");
+
+        Map<UUID, User> users = new HashMap<>();
+        users.put(user.getId(), user);
+        Map<UUID, Mail> mailsById = new HashMap<>();
+        List<UserMail> result = new ArrayList<>();
+
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            int index = 1;
+            if (mailIds != null) {
+                ps.setArray(index++, connection.createArrayOf("UUID", mailIds.toArray()));
+            }
+            index = bindFilters(ps, index, user, folder, after);
+            if (changedAfter > 0) ps.setLong(index++, changedAfter);
+            if (limit > 0) ps.setInt(index, limit);
+
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    UUID mailId = UUID.fromString(rs.getString("mail_id"));
+                    Timestamp mailDate = rs.getTimestamp("mail_date");
+
+                    Mail mail = new Mail(
+                            mailId,
+                            UserRowMapper.map(rs, "sender_", users, userDao),
+                            new ArrayList<>(),
+                            new ArrayList<>(),
+                            new ArrayList<>(),
+                            mailDate != null ? mailDate.toLocalDateTime() : null,
+                            rs.getString("subject"),
+                            null
+                    );
+                    mailsById.put(mailId, mail);
+
+                    UserMail userMail = new UserMail(user, mail, MailFolder.valueOf(rs.getString("folder")));
+                    if (rs.getBoolean("is_read")) userMail.setRead(true);
+                    if (rs.getBoolean("is_deleted")) userMail.markAsDeleted();
+
+                    result.add(userMail);
+                }
+            }
+        }
 
+        MailRecipientRows.load(connection, mailsById, users, userDao, user.getId());
         return result;
     }
 
+    private static String folderFilter(MailFolder folder) {
+        return folder != null ? " AND um.folder = ?" : "";
+    }
+
+    /**
+     * Orden de la lista: fecha descendente y, a igual fecha, id descendente. Con carpeta se repiten
+     * delante las columnas fijadas por el filtro para que H2 recorra idx_user_mails_folder_date ya
+     * ordenado, sin leer y ordenar la carpeta entera en cada página.
+     */
+    private static String orderBy(MailFolder folder) {
+        return (folder != null ? " ORDER BY um.user_id, um.folder," : " ORDER BY") + " um.mail_date DESC, um.mail_id DESC";
+    }
+
+    private static String seekFilter(MailCursor after) {
+        return after != null ? " AND (um.mail_date < ? OR (um.mail_date = ? AND um.mail_id < ?))" : "";
+    }
+
+    private static int bindFilters(PreparedStatement ps, User user, MailFolder folder, MailCursor after) throws SQLException {
+        return bindFilters(ps, 1, user, folder, after);
+    }
+
+    private static int bindFilters(PreparedStatement ps, int index, User user, MailFolder folder, MailCursor after) throws SQLException {
+        ps.setObject(index++, user.getId());
+        if (folder != null) {
+            ps.setString(index++, folder.name());
+        }
+        if (after != null) {
+            Timestamp date = Timestamp.valueOf(after.getDate());
+            ps.setTimestamp(index++, date);
+            ps.setTimestamp(index++, date);
+            ps.setObject(index++, after.getMailId());
+        }
+        return index;
+    }
+
     @Override
     public void markAsRead(User user, Mail mail) {
-        updateFlag(user, mail, "is_read", true);
+        folderCounterDao.track(List.of(user.getId()), List.of(mail.getId()), () -> {
+            updateFlag(user, mail, "is_read", true);
+            return null;
+        });
     }
 
     @Override
@@ -131,23 +309,313 @@ public class UserMailDaoImpl implements UserMailDao {
 
     @Override
     public void delete(User user, Mail mail) {
-        String sql = "DELETE FROM user_mails WHERE user_id = ? AND mail_id = ?";
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
-            ps.setObject(1, user.getId());
-            ps.setObject(2, mail.getId());
-            ps.executeUpdate();
+        deleteAll(user, List.of(mail.getId()));
+    }
+
+    @Override
+    public void updateFlags(Collection<MailFlagUpdate> updates) {
+        if (updates.isEmpty()) {
+            return;
+        }
+        String sql = """
+            UPDATE user_mails SET is_read = COALESCE(?, is_read), is_deleted = COALESCE(?, is_deleted), modseq = ?
+            WHERE user_id = ? AND mail_id = ?
+        """;
+        Set<UUID> userIds = new HashSet<>();
+        Set<UUID> mailIds = new HashSet<>();
+        for (MailFlagUpdate update : updates) {
+            userIds.add(update.getUserId());
+            mailIds.add(update.getMailId());
+        }
+        // Con varios usuarios la medición abarca todas las combinaciones: las filas no tocadas se anulan
+        folderCounterDao.track(userIds, mailIds, () -> {
+            writeFlags(sql, userIds, updates);
+            return null;
+        });
+    }
+
+    private void writeFlags(String sql, Set<UUID> userIds, Collection<MailFlagUpdate> updates) {
+        try {
+            connectionPool.inTransaction(connection -> {
+                Map<UUID, Long> modseqs = nextModseq(connection, userIds);
+                try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                    int pending = 0;
+                    for (MailFlagUpdate update : updates) {
+                        ps.setObject(1, update.getRead(), Types.BOOLEAN);
+                        ps.setObject(2, update.getDeleted(), Types.BOOLEAN);
+                        ps.setLong(3, modseqs.get(update.getUserId()));
+                        ps.setObject(4, update.getUserId());
+                        ps.setObject(5, update.getMailId());
+                        ps.addBatch();
+                        if (++pending == BATCH_SIZE) {
+                            ps.executeBatch();
+                            pending = 0;
+                        }
+                    }
+                    if (pending > 0) {
+                        ps.executeBatch();
+                    }
+                }
+                return null;
+            });
         } catch (SQLException e) {
-            throw new RuntimeException("Error al eliminar el correo del usuario", e);
+            throw new RuntimeException("Error al actualizar las marcas de los correos", e);
         }
     }
 
-    private void updateFlag(User user, Mail mail, String column, boolean value) {
-        String sql = "UPDATE user_mails SET " + column + " = ? WHERE user_id = ? AND mail_id = ?";
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
-            ps.setBoolean(1, value);
+    @Override
+    public int markAllAsRead(User user, Collection<UUID> mailIds, boolean read) {
+        return trackedUpdateByIds("UPDATE user_mails SET is_read = ?, modseq = ? WHERE user_id = ? AND mail_id = ANY(?)", read, user, mailIds,
+                "Error al marcar los correos como leídos");
+    }
+
+    @Override
+    public int touch(User user, Collection<UUID> mailIds) {
+        // La fecha de un borrador cambia al guardarlo: se vuelve a copiar para mantener su posición
+        return updateByIds("""
+            UPDATE user_mails um SET modseq = ?, mail_date = (SELECT m.mail_date FROM mails m WHERE m.id = um.mail_id)
+            WHERE um.user_id = ? AND um.mail_id = ANY(?)""", null, user, mailIds,
+                "Error al registrar la modificación de los correos");
+    }
+
+    @Override
+    public int markAllAsDeleted(User user, Collection<UUID> mailIds) {
+        return updateByIds("UPDATE user_mails SET is_deleted = ?, modseq = ? WHERE user_id = ? AND mail_id = ANY(?)", true, user, mailIds,
+                "Error al marcar los correos como eliminados");
+    }
+
+    @Override
+    public int deleteAll(User user, Collection<UUID> mailIds) {
+        if (mailIds.isEmpty()) {
+            return 0;
+        }
+        return folderCounterDao.track(List.of(user.getId()), mailIds, () -> {
+            try {
+                return connectionPool.inTransaction(connection ->
+                        removeRows(connection, user, " AND mail_id = ANY(?)", connection.createArrayOf("UUID", mailIds.toArray())));
+            } catch (SQLException e) {
+                throw new RuntimeException("Error al eliminar los correos del usuario", e);
+            }
+        });
+    }
+
+    @Override
+    public int moveAll(User user, Collection<UUID> mailIds, MailFolder target) {
+        return trackedUpdateByIds("UPDATE user_mails SET folder = ?, modseq = ? WHERE user_id = ? AND mail_id = ANY(?)", target.name(), user, mailIds,
+                "Error al mover los correos a " + target);
+    }
+
+    @Override
+    public int markFolderAsRead(User user, MailFolder folder) {
+        return updateFolder("UPDATE user_mails SET is_read = TRUE, modseq = ? WHERE user_id = ? AND folder = ? AND is_read = FALSE", user, folder,
+                () -> folderCounterDao.resetUnread(user.getId(), folder), "Error al marcar la carpeta como leída");
+    }
+
+    @Override
+    public int deleteFolder(User user, MailFolder folder) {
+        try {
+            return connectionPool.inTransaction(connection -> {
+                int affected = removeRows(connection, user, " AND folder = ?", folder.name());
+                folderCounterDao.clear(user.getId(), folder);
+                return affected;
+            });
+        } catch (SQLException e) {
+            throw new RuntimeException("Error al vaciar la carpeta", e);
+        }
+    }
+
+    @Override
+    public long findModseq(User user) {
+        try (Connection connection = connectionPool.getConnection()) {
+            return currentModseq(connection, user);
+        } catch (SQLException e) {
+            throw new RuntimeException("Error al leer el número de modificación del buzón", e);
+        }
+    }
+
+    /**
+     * Lee primero el número actual y después los cambios: lo confirmado entre ambas lecturas puede
+     * llegar dos veces (ahora y en la próxima consulta), pero nunca se pierde.
+     */
+    @Override
+    public MailboxChanges findChangesSince(User user, long modseq, int limit) {
+        String tombstones = """
+            SELECT t.mail_id, t.folder
+            FROM user_mail_tombstones t
+            WHERE t.user_id = ? AND t.modseq > ?
+              AND NOT EXISTS (SELECT 1 FROM user_mails um WHERE um.user_id = t.user_id AND um.mail_id = t.mail_id)
+            ORDER BY t.modseq""" + (limit > 0 ? " LIMIT ?" : "");
+        try (Connection connection = connectionPool.getConnection()) {
+            long current = currentModseq(connection, user);
+            if (current <= modseq) {
+                return new MailboxChanges(List.of(), Map.of(), current, true);
+            }
+            // Se pide una fila de más para saber si se superó el límite
+            int fetch = limit > 0 ? limit + 1 : 0;
+            // Desde 0 no se filtra: todas las filas tienen número 1 o mayor
+            List<UserMail> changed = loadHeaders(connection, user, null, null, null, Math.max(modseq, 0), fetch);
+            Map<UUID, MailFolder> removed = new LinkedHashMap<>();
+            try (PreparedStatement ps = connection.prepareStatement(tombstones)) {
+                ps.setObject(1, user.getId());
+                ps.setLong(2, modseq);
+                if (limit > 0) ps.setInt(3, fetch);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        String folder = rs.getString("folder");
+                        removed.put(rs.getObject("mail_id", UUID.class), folder != null ? MailFolder.valueOf(folder) : null);
+                    }
+                }
+            }
+            boolean complete = limit <= 0 || (changed.size() <= limit && removed.size() <= limit);
+            return new MailboxChanges(changed, removed, current, complete);
+        } catch (SQLException e) {
+            throw new RuntimeException("Error al leer los cambios del buzón", e);
+        }
+    }
+
+    @Override
+    public Map<MailFolder, FolderCounter> findFolderCounters(User user) {
+        return folderCounterDao.findByUser(user);
+    }
+
+    /**
+     * Como updateByIds, aplicando a los contadores de carpeta la diferencia que produce la sentencia.
+     */
+    private int trackedUpdateByIds(String sql, Object value, User user, Collection<UUID> mailIds, String errorMessage) {
+        if (mailIds.isEmpty()) {
+            return 0;
+        }
+        return folderCounterDao.track(List.of(user.getId()), mailIds,
+                () -> updateByIds(sql, value, user, mailIds, errorMessage));
+    }
+
+    /**
+     * Ejecuta una actualización sobre un conjunto de ids; los parámetros son {@code value} (si no es
+     * null), el número de modificación que se asigna a las filas, el usuario y los ids.
+     */
+    private int updateByIds(String sql, Object value, User user, Collection<UUID> mailIds, String errorMessage) {
+        if (mailIds.isEmpty()) {
+            return 0;
+        }
+        try {
+            return connectionPool.inTransaction(connection -> {
+                long modseq = nextModseq(connection, List.of(user.getId())).get(user.getId());
+                try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                    int index = 1;
+                    if (value != null) {
+                        ps.setObject(index++, value);
+                    }
+                    ps.setLong(index++, modseq);
+                    ps.setObject(index++, user.getId());
+                    ps.setArray(index, connection.createArrayOf("UUID", mailIds.toArray()));
+                    return ps.executeUpdate();
+                }
+            });
+        } catch (SQLException e) {
+            throw new RuntimeException(errorMessage, e);
+        }
+    }
+
+    /**
+     * Ejecuta una sentencia sobre toda la carpeta y ajusta sus contadores en la misma transacción.
+     */
+    private int updateFolder(String sql, User user, MailFolder folder, Runnable adjustCounters, String errorMessage) {
+        try {
+            return connectionPool.inTransaction(connection -> {
+                long modseq = nextModseq(connection, List.of(user.getId())).get(user.getId());
+                try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                    ps.setLong(1, modseq);
+                    ps.setObject(2, user.getId());
+                    ps.setString(3, folder.name());
+                    int affected = ps.executeUpdate();
+                    adjustCounters.run();
+                    return affected;
+                }
+            });
+        } catch (SQLException e) {
+            throw new RuntimeException(errorMessage, e);
+        }
+    }
+
+    /**
+     * Incrementa el número de modificación de cada buzón y devuelve el nuevo valor. La fila de
+     * mailbox_modseq queda bloqueada hasta el fin de la transacción, así que en cada buzón los números
+     * se confirman en orden y quien lea "cambios desde N" no puede saltearse uno todavía en curso.
+     * Los usuarios se recorren siempre en el mismo orden para que dos entregas no se bloqueen entre sí.
+     */
+    private static Map<UUID, Long> nextModseq(Connection connection, Collection<UUID> userIds) throws SQLException {
+        String merge = """
+            MERGE INTO mailbox_modseq t
+            USING (VALUES (CAST(? AS UUID))) AS d (user_id)
+            ON t.user_id = d.user_id
+            WHEN MATCHED THEN UPDATE SET modseq = t.modseq + 1
+            WHEN NOT MATCHED THEN INSERT (user_id, modseq) VALUES (d.user_id, 1)
+        """;
+        Set<UUID> ordered = new TreeSet<>(userIds);
+        try (PreparedStatement ps = connection.prepareStatement(merge)) {
+            for (UUID userId : ordered) {
+                ps.setObject(1, userId);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+        Map<UUID, Long> modseqs = new HashMap<>();
+        try (PreparedStatement ps = connection.prepareStatement("SELECT user_id, modseq FROM mailbox_modseq WHERE user_id = ANY(?)")) {
+            ps.setArray(1, connection.createArrayOf("UUID", ordered.toArray()));
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    modseqs.put(rs.getObject("user_id", UUID.class), rs.getLong("modseq"));
+                }
+            }
+        }
+        return modseqs;
+    }
+
+    private static long currentModseq(Connection connection, User user) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement("SELECT modseq FROM mailbox_modseq WHERE user_id = ?")) {
+            ps.setObject(1, user.getId());
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+
+    /**
+     * Deja una lápida por cada fila del filtro (con su carpeta y un nuevo número de modificación)
+     * y después las borra. {@code filter} tiene un único parámetro, {@code filterValue}.
+     */
+    private static int removeRows(Connection connection, User user, String filter, Object filterValue) throws SQLException {
+        long modseq = nextModseq(connection, List.of(user.getId())).get(user.getId());
+        String tombstones = """
+            MERGE INTO user_mail_tombstones (user_id, mail_id, folder, modseq) KEY (user_id, mail_id)
+            SELECT user_id, mail_id, folder, ? FROM user_mails WHERE user_id = ?""" + filter;
+        try (PreparedStatement ps = connection.prepareStatement(tombstones)) {
+            ps.setLong(1, modseq);
             ps.setObject(2, user.getId());
-            ps.setObject(3, mail.getId());
+            ps.setObject(3, filterValue);
             ps.executeUpdate();
+        }
+        try (PreparedStatement ps = connection.prepareStatement("DELETE FROM user_mails WHERE user_id = ?" + filter)) {
+            ps.setObject(1, user.getId());
+            ps.setObject(2, filterValue);
+            return ps.executeUpdate();
+        }
+    }
+
+    private void updateFlag(User user, Mail mail, String column, boolean value) {
+        String sql = "UPDATE user_mails SET " + column + " = ?, modseq = ? WHERE user_id = ? AND mail_id = ?";
+        try {
+            connectionPool.inTransaction(connection -> {
+                long modseq = nextModseq(connection, List.of(user.getId())).get(user.getId());
+                try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                    ps.setBoolean(1, value);
+                    ps.setLong(2, modseq);
+                    ps.setObject(3, user.getId());
+                    ps.setObject(4, mail.getId());
+                    ps.executeUpdate();
+                }
+                return null;
+            });
         } catch (SQLException e) {
             throw new RuntimeException("Error al actualizar el campo '" + column + "' del correo del usuario", e);
         }
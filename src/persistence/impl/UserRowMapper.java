@@ -0,0 +1,51 @@
+package persistence.impl;
+
+import models.User;
+import models.UserRole;
+import persistence.dao.UserDao;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Construye usuarios a partir de columnas de la tabla users, propias o con alias de un JOIN
+ * (por ejemplo sender_id, sender_name, ... con el prefijo "sender_").
+ */
+final class UserRowMapper {
+
+    private UserRowMapper() {
+    }
+
+    static User map(ResultSet rs, String prefix) throws SQLException {
+        String roleStr = rs.getString(prefix + "role");
+        UserRole role = (roleStr != null) ? UserRole.valueOf(roleStr) : UserRole.USER;
+
+        return new User(
+                UUID.fromString(rs.getString(prefix + "id")),
+                rs.getString(prefix + "name"),
+                rs.getString(prefix + "last_name"),
+                rs.getString(prefix + "email"),
+                role
+        );
+    }
+
+    /**
+     * Igual que {@link #map} pero reutiliza la instancia ya cargada en esta consulta para el mismo id,
+     * y si no la había la obtiene canónica del UserDao. Devuelve null si la fila no trae usuario
+     * (LEFT JOIN sin coincidencia).
+     */
+    static User map(ResultSet rs, String prefix, Map<UUID, User> loaded, UserDao userDao) throws SQLException {
+        String id = rs.getString(prefix + "id");
+        if (id == null) {
+            return null;
+        }
+        User user = loaded.get(UUID.fromString(id));
+        if (user == null) {
+            user = userDao.canonicalize(map(rs, prefix));
+            loaded.put(user.getId(), user);
+        }
+        return user;
+    }
+}
@@ -0,0 +1,348 @@
+package persistence.impl;
+
+import models.FolderCounter;
+import models.Mail;
+import models.MailCursor;
+import models.MailFlagUpdate;
+import models.MailboxChanges;
+import models.MailPage;
+import models.User;
+import models.UserMail;
+import persistence.dao.UserMailDao;
+import utils.MailFolder;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Escritura diferida de las marcas leído/eliminado delante de otro UserMailDao.
+ * Los cambios se acumulan en memoria (varios cambios del mismo correo se combinan en uno) y se
+ * escriben en lote cada FLUSH_INTERVAL_MILLIS, al llegar a FLUSH_THRESHOLD correos pendientes o al
+ * cerrar. Las lecturas aplican los cambios aún no escritos, así que la interfaz los ve de inmediato.
+ */
+public class WriteBehindUserMailDao implements UserMailDao {
+
+    public static final long FLUSH_INTERVAL_MILLIS = 2_000;
+    public static final int FLUSH_THRESHOLD = 200;
+
+    private static final class Key {
+        private final UUID userId;
+        private final UUID mailId;
+
+        private Key(UUID userId, UUID mailId) {
+            this.userId = userId;
+            this.mailId = mailId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return userId.equals(other.userId) && mailId.equals(other.mailId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(userId, mailId);
+        }
+    }
+
+    private final UserMailDao delegate;
+    private final Map<Key, MailFlagUpdate> pending = new ConcurrentHashMap<>();
+    private final Map<Key, MailFlagUpdate> inFlight = new ConcurrentHashMap<>();
+    private final Object flushLock = new Object();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private final ScheduledExecutorService flusher;
+
+    private final LongAdder enqueued = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+
+    public WriteBehindUserMailDao(UserMailDao delegate) {
+        this.delegate = delegate;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "mail-flags-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushQuietly, FLUSH_INTERVAL_MILLIS, FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void markAsRead(User user, Mail mail) {
+        enqueue(new MailFlagUpdate(user.getId(), mail.getId(), true, null));
+    }
+
+    @Override
+    public void markAsDeleted(User user, Mail mail) {
+        enqueue(new MailFlagUpdate(user.getId(), mail.getId(), null, true));
+    }
+
+    @Override
+    public void updateFlags(Collection<MailFlagUpdate> updates) {
+        for (MailFlagUpdate update : updates) {
+            enqueue(update);
+        }
+    }
+
+    private void enqueue(MailFlagUpdate update) {
+        pending.merge(new Key(update.getUserId(), update.getMailId()), update, MailFlagUpdate::merge);
+        enqueued.increment();
+        if (pending.size() >= FLUSH_THRESHOLD && flushRequested.compareAndSet(false, true)) {
+            flusher.execute(this::flushQuietly);
+        }
+    }
+
+    /**
+     * Escribe ahora todos los cambios pendientes.
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            flushRequested.set(false);
+            if (pending.isEmpty()) {
+                return;
+            }
+            List<MailFlagUpdate> batch = new ArrayList<>(pending.size());
+            for (Key key : new ArrayList<>(pending.keySet())) {
+                // Primero en inFlight y después fuera de pending: una lectura entre los dos pasos ve el
+                // cambio dos veces, nunca ninguna. Si entretanto llegó otro cambio, queda para el próximo lote
+                MailFlagUpdate update = pending.get(key);
+                if (update == null) {
+                    continue;
+                }
+                inFlight.put(key, update);
+                if (pending.remove(key, update)) {
+                    batch.add(update);
+                } else {
+                    inFlight.remove(key, update);
+                }
+            }
+            try {
+                delegate.updateFlags(batch);
+                written.add(batch.size());
+                flushes.increment();
+            } catch (RuntimeException e) {
+                // Vuelven a la cola sin pisar los cambios que llegaron mientras tanto
+                inFlight.forEach((key, update) -> pending.merge(key, update, (newer, failed) -> failed.merge(newer)));
+                throw e;
+            } finally {
+                inFlight.clear();
+            }
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            System.err.println("Error al guardar las marcas de los correos: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Escribe lo pendiente y detiene la escritura periódica.
+     */
+    public void close() {
+        flusher.shutdown();
+        flushQuietly();
+        System.out.println("Marcas de correo: " + getStats());
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    public String getStats() {
+        long total = enqueued.sum();
+        long rows = written.sum();
+        return String.format("cambios=%d, filas escritas=%d, lotes=%d, combinados=%.1f%%",
+                total, rows, flushes.sum(), total == 0 ? 0 : (total - rows - pending.size()) * 100.0 / total);
+    }
+
+    /**
+     * Copia de los cambios aún no escritos, tomada antes de leer la base. Si se mirara después, un
+     * lote confirmado entre la lectura y la consulta de inFlight dejaría la fila leída sin su cambio.
+     * Se copia pending antes que inFlight porque flush pasa cada cambio en el orden inverso: así
+     * ninguno se pierde entre las dos copias. Lo de pending es más nuevo y se combina encima.
+     */
+    private Map<Key, MailFlagUpdate> unwritten() {
+        if (pending.isEmpty() && inFlight.isEmpty()) {
+            return Map.of();
+        }
+        Map<Key, MailFlagUpdate> queued = new HashMap<>(pending);
+        Map<Key, MailFlagUpdate> unwritten = new HashMap<>(inFlight);
+        queued.forEach((key, update) -> unwritten.merge(key, update, MailFlagUpdate::merge));
+        return unwritten;
+    }
+
+    private static List<UserMail> overlay(Map<Key, MailFlagUpdate> unwritten, List<UserMail> userMails) {
+        if (unwritten.isEmpty()) {
+            return userMails;
+        }
+        for (UserMail userMail : userMails) {
+            MailFlagUpdate update = unwritten.get(new Key(userMail.getUser().getId(), userMail.getMail().getId()));
+            if (update != null) {
+                update.applyTo(userMail);
+            }
+        }
+        return userMails;
+    }
+
+    // Las operaciones por conjunto escriben antes lo pendiente para respetar el orden de los cambios
+
+    @Override
+    public int markAllAsRead(User user, Collection<UUID> mailIds, boolean read) {
+        flush();
+        return delegate.markAllAsRead(user, mailIds, read);
+    }
+
+    @Override
+    public int touch(User user, Collection<UUID> mailIds) {
+        return delegate.touch(user, mailIds);
+    }
+
+    @Override
+    public int markAllAsDeleted(User user, Collection<UUID> mailIds) {
+        flush();
+        return delegate.markAllAsDeleted(user, mailIds);
+    }
+
+    @Override
+    public int deleteAll(User user, Collection<UUID> mailIds) {
+        flush();
+        return delegate.deleteAll(user, mailIds);
+    }
+
+    @Override
+    public int moveAll(User user, Collection<UUID> mailIds, MailFolder target) {
+        flush();
+        return delegate.moveAll(user, mailIds, target);
+    }
+
+    @Override
+    public int markFolderAsRead(User user, MailFolder folder) {
+        flush();
+        return delegate.markFolderAsRead(user, folder);
+    }
+
+    @Override
+    public int deleteFolder(User user, MailFolder folder) {
+        flush();
+        return delegate.deleteFolder(user, folder);
+    }
+
+    /**
+     * Contadores guardados más el efecto de las marcas de leído que todavía no se escribieron. No
+     * escribe la cola, para no demorar a quien consulta: se leen las filas guardadas de esos correos
+     * y se ajustan los no leídos de su carpeta. Si un lote se confirma entre las dos lecturas, el
+     * ajuste puede quedar corrido en uno hasta la próxima consulta.
+     */
+    @Override
+    public Map<MailFolder, FolderCounter> findFolderCounters(User user) {
+        Map<UUID, Boolean> unwritten = new HashMap<>();
+        collectReads(unwritten().values(), user, unwritten);
+        Map<MailFolder, FolderCounter> counters = delegate.findFolderCounters(user);
+        if (unwritten.isEmpty()) {
+            return counters;
+        }
+        for (UserMail stored : delegate.findByUserAndMailIds(user, unwritten.keySet())) {
+            boolean read = unwritten.get(stored.getMail().getId());
+            FolderCounter counter = counters.get(stored.getFolder());
+            if (stored.isRead() != read && counter != null) {
+                counters.put(stored.getFolder(), counter.plus(
+                        new FolderCounter(user.getId(), stored.getFolder(), 0, read ? -1 : 1, 0)));
+            }
+        }
+        return counters;
+    }
+
+    private static void collectReads(Collection<MailFlagUpdate> updates, User user, Map<UUID, Boolean> reads) {
+        for (MailFlagUpdate update : updates) {
+            if (update.getRead() != null && update.getUserId().equals(user.getId())) {
+                reads.put(update.getMailId(), update.getRead());
+            }
+        }
+    }
+
+    /**
+     * Escribe antes lo pendiente: las marcas en cola reciben su número de modificación al escribirse.
+     */
+    @Override
+    public long findModseq(User user) {
+        flush();
+        return delegate.findModseq(user);
+    }
+
+    @Override
+    public MailboxChanges findChangesSince(User user, long modseq, int limit) {
+        flush();
+        return delegate.findChangesSince(user, modseq, limit);
+    }
+
+    @Override
+    public void save(UserMail userMail) {
+        delegate.save(userMail);
+    }
+
+    @Override
+    public void saveAll(List<UserMail> userMails) {
+        delegate.saveAll(userMails);
+    }
+
+    @Override
+    public void delete(User user, Mail mail) {
+        // También sale de inFlight: si el lote en curso falla no vuelve a la cola un correo ya borrado
+        Key key = new Key(user.getId(), mail.getId());
+        pending.remove(key);
+        inFlight.remove(key);
+        delegate.delete(user, mail);
+    }
+
+    @Override
+    public List<UserMail> findByUser(User user) {
+        Map<Key, MailFlagUpdate> unwritten = unwritten();
+        return overlay(unwritten, delegate.findByUser(user));
+    }
+
+    @Override
+    public List<UserMail> findByUserAndFolder(User user, MailFolder folder) {
+        Map<Key, MailFlagUpdate> unwritten = unwritten();
+        return overlay(unwritten, delegate.findByUserAndFolder(user, folder));
+    }
+
+    @Override
+    public List<UserMail> findByUserAndMailIds(User user, Collection<UUID> mailIds) {
+        Map<Key, MailFlagUpdate> unwritten = unwritten();
+        return overlay(unwritten, delegate.findByUserAndMailIds(user, mailIds));
+    }
+
+    @Override
+    public MailPage findPageByUserAndFolder(User user, MailFolder folder, MailCursor after, int limit) {
+        Map<Key, MailFlagUpdate> unwritten = unwritten();
+        MailPage page = delegate.findPageByUserAndFolder(user, folder, after, limit);
+        overlay(unwritten, page.getItems());
+        return page;
+    }
+
+    @Override
+    public MailCursor findCursor(User user, MailFolder folder, MailCursor after, int skip) {
+        return delegate.findCursor(user, folder, after, skip);
+    }
+
+    @Override
+    public int countByUserAndFolder(User user, MailFolder folder) {
+        return delegate.countByUserAndFolder(user, folder);
+    }
+}
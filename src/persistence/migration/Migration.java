@@ -0,0 +1,76 @@
+package persistence.migration;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HexFormat;
+
+/**
+ * Cambio de esquema versionado. Una vez aplicada, una migración no debe modificarse:
+ * su checksum se guarda en schema_version y se verifica en cada arranque.
+ */
+public class Migration {
+
+    @FunctionalInterface
+    public interface Step {
+        void apply(Connection connection) throws SQLException;
+    }
+
+    private final int version;
+    private final String description;
+    private final String checksum;
+    private final Step step;
+
+    private Migration(int version, String description, String fingerprint, Step step) {
+        this.version = version;
+        this.description = description;
+        this.checksum = sha256(version + ":" + fingerprint);
+        this.step = step;
+    }
+
+    public static Migration sql(int version, String description, String... statements) {
+        return new Migration(version, description, String.join(";\n", statements), connection -> {
+            try (Statement stmt = connection.createStatement()) {
+                for (String statement : statements) {
+                    stmt.execute(statement);
+                }
+            }
+        });
+    }
+
+    /**
+     * Migración escrita en Java (por ejemplo, para transformar datos). El checksum se calcula sobre
+     * la descripción, así que cambiar su comportamiento requiere una versión nueva.
+     */
+    public static Migration java(int version, String description, Step step) {
+        return new Migration(version, description, "java:" + description, step);
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public String getChecksum() {
+        return checksum;
+    }
+
+    void apply(Connection connection) throws SQLException {
+        step.apply(connection);
+    }
+
+    private static String sha256(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package persistence.migration;
+
+import java.util.List;
+
+/**
+ * Migraciones del esquema de la aplicación. Nunca se editan las existentes: cada cambio es una
+ * versión nueva al final de la lista.
+ */
+public final class Migrations {
+
+    private Migrations() {
+    }
+
+    public static List<Migration> all() {
+        return List.of(
+                Migration.sql(1, "Tablas base",
+                        """
+                        CREATE TABLE IF NOT EXISTS users (
+                            id UUID PRIMARY KEY,
+                            name VARCHAR(100),
+                            last_name VARCHAR(100),
+                            email VARCHAR(100) UNIQUE,
+                            role VARCHAR(20) DEFAULT 'USER'
+                        )""",
+                        """
+                        CREATE TABLE IF NOT EXISTS mails (
+                            id UUID PRIMARY KEY,
+                            sender_id UUID,
+                            subject VARCHAR(255),
+                            message TEXT,
+                            mail_date TIMESTAMP,
+                            FOREIGN KEY (sender_id) REFERENCES users(id)
+                        )""",
+                        """
+                        CREATE TABLE IF NOT EXISTS mail_recipients (
+                            mail_id UUID,
+                            recipient_id UUID,
+                            recipient_type VARCHAR(3) DEFAULT 'TO' NOT NULL,
+                            PRIMARY KEY (mail_id, recipient_id, recipient_type),
+                            FOREIGN KEY (mail_id) REFERENCES mails(id) ON DELETE CASCADE,
+                            FOREIGN KEY (recipient_id) REFERENCES users(id)
+                        )""",
+                        """
+                        CREATE TABLE IF NOT EXISTS user_mails (
+                            user_id UUID,
+                            mail_id UUID,
+                            folder VARCHAR(20),
+                            is_read BOOLEAN,
+                            is_deleted BOOLEAN,
+                            PRIMARY KEY (user_id, mail_id)
+                        )""",
+                        """
+                        CREATE TABLE IF NOT EXISTS contact_book (
+                            user_id UUID NOT NULL,
+                            contact_id UUID NOT NULL,
+                            PRIMARY KEY (user_id, contact_id),
+                            CONSTRAINT fk_user FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE,
+                            CONSTRAINT fk_contact FOREIGN KEY (contact_id) REFERENCES users(id) ON DELETE CASCADE
+                        )"""),
+                Migration.sql(2, "Rol de usuario en bases anteriores a los roles",
+                        "ALTER TABLE users ADD COLUMN IF NOT EXISTS role VARCHAR(20) DEFAULT 'USER'"),
+                Migration.java(3, "Destinatarios CC/BCC como filas tipadas de mail_recipients",
+                        new RecipientTypeMigration()),
+                Migration.sql(4, "Índices de carpetas, remitentes y destinatarios",
+                        "CREATE INDEX IF NOT EXISTS idx_user_mails_folder ON user_mails (user_id, folder, mail_id)",
+                        "CREATE INDEX IF NOT EXISTS idx_mails_sender ON mails (sender_id, mail_date)",
+                        "CREATE INDEX IF NOT EXISTS idx_mails_date ON mails (mail_date, id)",
+                        "CREATE INDEX IF NOT EXISTS idx_mail_recipients_recipient ON mail_recipients (recipient_id, mail_id)"),
+                Migration.sql(5, "Historial de direcciones por usuario",
+                        """
+                        CREATE TABLE IF NOT EXISTS address_usage (
+                            user_id UUID NOT NULL,
+                            email VARCHAR(100) NOT NULL,
+                            score DOUBLE NOT NULL,
+                            last_used TIMESTAMP,
+                            use_count INT NOT NULL,
+                            PRIMARY KEY (user_id, email),
+                            FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE
+                        )"""),
+                Migration.sql(6, "Contadores por carpeta",
+                        """
+                        CREATE TABLE IF NOT EXISTS folder_counters (
+                            user_id UUID NOT NULL,
+                            folder VARCHAR(20) NOT NULL,
+                            total BIGINT NOT NULL,
+                            unread BIGINT NOT NULL,
+                            size_chars BIGINT NOT NULL,
+                            PRIMARY KEY (user_id, folder)
+                        )""",
+                        """
+                        INSERT INTO folder_counters (user_id, folder, total, unread, size_chars)
+                        SELECT um.user_id, um.folder, COUNT(*),
+                               SUM(CASE WHEN COALESCE(um.is_read, FALSE) THEN 0 ELSE 1 END),
+                               SUM(COALESCE(LENGTH(m.subject), 0) + COALESCE(LENGTH(m.message), 0))
+                        FROM user_mails um
+                        JOIN mails m ON m.id = um.mail_id
+                        GROUP BY um.user_id, um.folder"""),
+                Migration.sql(7, "Índice de búsqueda de asunto y cuerpo",
+                        """
+                        CREATE TABLE IF NOT EXISTS search_docs (
+                            mail_id UUID PRIMARY KEY,
+                            length INT NOT NULL,
+                            mail_date TIMESTAMP
+                        )""",
+                        """
+                        CREATE TABLE IF NOT EXISTS search_terms (
+                            term VARCHAR(64) NOT NULL,
+                            mail_id UUID NOT NULL,
+                            subject_tf INT NOT NULL,
+                            body_tf INT NOT NULL,
+                            positions INTEGER ARRAY,
+                            PRIMARY KEY (term, mail_id)
+                        )""",
+                        "CREATE INDEX IF NOT EXISTS idx_search_terms_mail ON search_terms (mail_id)"),
+                Migration.sql(8, "Números de modificación por buzón y lápidas de correos quitados",
+                        "ALTER TABLE user_mails ADD COLUMN IF NOT EXISTS modseq BIGINT DEFAULT 0 NOT NULL",
+                        // Lo existente queda como el cambio 1: pedir los cambios desde 0 lo devuelve todo
+                        "UPDATE user_mails SET modseq = 1",
+                        "CREATE INDEX IF NOT EXISTS idx_user_mails_modseq ON user_mails (user_id, modseq)",
+                        """
+                        CREATE TABLE IF NOT EXISTS mailbox_modseq (
+                            user_id UUID PRIMARY KEY,
+                            modseq BIGINT NOT NULL
+                        )""",
+                        "INSERT INTO mailbox_modseq (user_id, modseq) SELECT DISTINCT user_id, 1 FROM user_mails",
+                        """
+                        CREATE TABLE IF NOT EXISTS user_mail_tombstones (
+                            user_id UUID NOT NULL,
+                            mail_id UUID NOT NULL,
+                            folder VARCHAR(20),
+                            modseq BIGINT NOT NULL,
+                            PRIMARY KEY (user_id, mail_id)
+                        )""",
+                        "CREATE INDEX IF NOT EXISTS idx_user_mail_tombstones_modseq ON user_mail_tombstones (user_id, modseq)"),
+                Migration.sql(9, "Fecha del correo en user_mails para paginar por índice",
+                        "ALTER TABLE user_mails ADD COLUMN IF NOT EXISTS mail_date TIMESTAMP",
+                        "UPDATE user_mails um SET mail_date = (SELECT m.mail_date FROM mails m WHERE m.id = um.mail_id)",
+                        "CREATE INDEX IF NOT EXISTS idx_user_mails_folder_date ON user_mails (user_id, folder, mail_date DESC, mail_id DESC)"),
+                // Los correos guardados sin fecha pasan a la más antigua posible: quedan al final de la lista
+                Migration.sql(10, "Fecha obligatoria en mails y user_mails",
+                        "UPDATE mails SET mail_date = TIMESTAMP '1970-01-01 00:00:00' WHERE mail_date IS NULL",
+                        "UPDATE user_mails um SET mail_date = (SELECT m.mail_date FROM mails m WHERE m.id = um.mail_id) WHERE um.mail_date IS NULL",
+                        "ALTER TABLE mails ALTER COLUMN mail_date SET NOT NULL",
+                        "ALTER TABLE user_mails ALTER COLUMN mail_date SET NOT NULL")
+        );
+    }
+}
@@ -0,0 +1,87 @@
+package persistence.migration;
+
+import models.RecipientType;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Bases creadas antes de tipar los destinatarios guardaban CC/BCC como emails separados por
+ * comas en mails.cc/mails.bcc. Se convierten en filas CC/BCC de mail_recipients y se eliminan
+ * esas columnas. En bases nuevas no hace nada.
+ */
+class RecipientTypeMigration implements Migration.Step {
+
+    @Override
+    public void apply(Connection connection) throws SQLException {
+        if (!columnExists(connection, "MAIL_RECIPIENTS", "RECIPIENT_TYPE")) {
+            try (Statement stmt = connection.createStatement()) {
+                stmt.execute("ALTER TABLE mail_recipients ADD COLUMN recipient_type VARCHAR(3) DEFAULT 'TO' NOT NULL");
+                stmt.execute("ALTER TABLE mail_recipients DROP PRIMARY KEY");
+                stmt.execute("ALTER TABLE mail_recipients ADD PRIMARY KEY (mail_id, recipient_id, recipient_type)");
+            }
+        }
+        if (columnExists(connection, "MAILS", "CC")) {
+            copyLegacyRecipients(connection);
+            try (Statement stmt = connection.createStatement()) {
+                stmt.execute("ALTER TABLE mails DROP COLUMN cc");
+                stmt.execute("ALTER TABLE mails DROP COLUMN bcc");
+            }
+        }
+    }
+
+    private void copyLegacyRecipients(Connection connection) throws SQLException {
+        Map<String, UUID> idsByEmail = new HashMap<>();
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT id, email FROM users")) {
+            while (rs.next()) {
+                idsByEmail.put(rs.getString("email"), UUID.fromString(rs.getString("id")));
+            }
+        }
+
+        String selectSql = "SELECT id, cc, bcc FROM mails WHERE COALESCE(cc, '') <> '' OR COALESCE(bcc, '') <> ''";
+        String insertSql = "MERGE INTO mail_recipients (mail_id, recipient_id, recipient_type) KEY (mail_id, recipient_id, recipient_type) VALUES (?, ?, ?)";
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery(selectSql);
+             PreparedStatement insertPs = connection.prepareStatement(insertSql)) {
+            while (rs.next()) {
+                UUID mailId = UUID.fromString(rs.getString("id"));
+                addLegacyRows(insertPs, mailId, rs.getString("cc"), RecipientType.CC, idsByEmail);
+                addLegacyRows(insertPs, mailId, rs.getString("bcc"), RecipientType.BCC, idsByEmail);
+            }
+            insertPs.executeBatch();
+        }
+    }
+
+    private void addLegacyRows(PreparedStatement ps, UUID mailId, String emails, RecipientType type, Map<String, UUID> idsByEmail) throws SQLException {
+        if (emails == null || emails.isEmpty()) {
+            return;
+        }
+        for (String email : emails.split(",")) {
+            UUID recipientId = idsByEmail.get(email.trim());
+            if (recipientId != null) {
+                ps.setObject(1, mailId);
+                ps.setObject(2, recipientId);
+                ps.setString(3, type.name());
+                ps.addBatch();
+            }
+        }
+    }
+
+    private static boolean columnExists(Connection connection, String table, String column) throws SQLException {
+        String sql = "SELECT COUNT(*) FROM INFORMATION_SCHEMA.COLUMNS WHERE TABLE_SCHEMA = SCHEMA() AND TABLE_NAME = ? AND COLUMN_NAME = ?";
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setString(1, table);
+            ps.setString(2, column);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() && rs.getInt(1) > 0;
+            }
+        }
+    }
+}
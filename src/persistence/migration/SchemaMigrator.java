@@ -0,0 +1,125 @@
+package persistence.migration;
+
+import config.ConnectionPool;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Aplica en orden las migraciones pendientes y registra cada una en schema_version.
+ * Falla si una migración ya aplicada cambió de checksum o si la base es más nueva que la aplicación.
+ */
+public class SchemaMigrator {
+
+    private final ConnectionPool connectionPool;
+    private final List<Migration> migrations;
+
+    public SchemaMigrator(ConnectionPool connectionPool, List<Migration> migrations) {
+        this.connectionPool = connectionPool;
+        this.migrations = migrations.stream()
+                .sorted(Comparator.comparingInt(Migration::getVersion))
+                .toList();
+        for (int i = 1; i < this.migrations.size(); i++) {
+            if (this.migrations.get(i).getVersion() == this.migrations.get(i - 1).getVersion()) {
+                throw new IllegalArgumentException("Versión de migración duplicada: " + this.migrations.get(i).getVersion());
+            }
+        }
+    }
+
+    /**
+     * @return número de migraciones aplicadas en esta ejecución
+     */
+    public int migrate() {
+        long start = System.nanoTime();
+        int applied = 0;
+        try {
+            createVersionTable();
+            Map<Integer, String> appliedChecksums = findAppliedChecksums();
+            int newestApplied = appliedChecksums.keySet().stream().mapToInt(Integer::intValue).max().orElse(0);
+            if (newestApplied > currentVersion()) {
+                throw new IllegalStateException("La base de datos está en la versión " + newestApplied
+                        + " y la aplicación solo conoce hasta la " + currentVersion());
+            }
+
+            for (Migration migration : migrations) {
+                String checksum = appliedChecksums.get(migration.getVersion());
+                if (checksum != null) {
+                    if (!checksum.equals(migration.getChecksum())) {
+                        throw new IllegalStateException("La migración V" + migration.getVersion()
+                                + " (" + migration.getDescription() + ") cambió después de aplicarse");
+                    }
+                    continue;
+                }
+                apply(migration);
+                applied++;
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Error al migrar el esquema: " + e.getMessage(), e);
+        }
+        System.out.printf("Esquema: %d migraciones aplicadas en %.1f ms (versión %d)%n",
+                applied, (System.nanoTime() - start) / 1_000_000.0, currentVersion());
+        return applied;
+    }
+
+    public int currentVersion() {
+        return migrations.isEmpty() ? 0 : migrations.get(migrations.size() - 1).getVersion();
+    }
+
+    private void apply(Migration migration) throws SQLException {
+        String insertSql = "INSERT INTO schema_version (version, description, checksum, applied_at, execution_ms) VALUES (?, ?, ?, ?, ?)";
+        long start = System.nanoTime();
+        // H2 confirma implícitamente cada DDL, así que la transacción solo garantiza la atomicidad
+        // de los cambios de datos; las migraciones DDL usan IF [NOT] EXISTS para poder reintentarse.
+        connectionPool.inTransaction(connection -> {
+            migration.apply(connection);
+            long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+            try (PreparedStatement ps = connection.prepareStatement(insertSql)) {
+                ps.setInt(1, migration.getVersion());
+                ps.setString(2, migration.getDescription());
+                ps.setString(3, migration.getChecksum());
+                ps.setTimestamp(4, Timestamp.valueOf(LocalDateTime.now()));
+                ps.setLong(5, elapsedMillis);
+                ps.executeUpdate();
+            }
+            System.out.println("Migración V" + migration.getVersion() + " aplicada (" + migration.getDescription() + ") en " + elapsedMillis + " ms");
+            return null;
+        });
+    }
+
+    private void createVersionTable() throws SQLException {
+        String sql = """
+            CREATE TABLE IF NOT EXISTS schema_version (
+                version INT PRIMARY KEY,
+                description VARCHAR(200),
+                checksum VARCHAR(64) NOT NULL,
+                applied_at TIMESTAMP,
+                execution_ms BIGINT
+            )
+        """;
+        try (Connection connection = connectionPool.getConnection();
+             Statement stmt = connection.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+
+    private Map<Integer, String> findAppliedChecksums() throws SQLException {
+        Map<Integer, String> checksums = new HashMap<>();
+        try (Connection connection = connectionPool.getConnection();
+             Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT version, checksum FROM schema_version")) {
+            while (rs.next()) {
+                checksums.put(rs.getInt("version"), rs.getString("checksum"));
+            }
+        }
+        return checksums;
+    }
+}
@@ -0,0 +1,204 @@
+package services;
+
+import models.User;
+import persistence.dao.UserChangeListener;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Índice en memoria de las direcciones del directorio para el autocompletado.
+ * Las búsquedas por prefijo usan un conjunto ordenado (búsqueda binaria + recorrido del rango);
+ * las búsquedas por subcadena usan un índice de trigramas y verifican solo los candidatos.
+ * Se mantiene al día con las altas y bajas de usuarios sin reconstruirse.
+ */
+public class AddressIndex implements UserChangeListener {
+
+    private static final int GRAM = 3;
+
+    private final NavigableSet<String> sorted = new ConcurrentSkipListSet<>();
+    private final Map<String, String> emailsByKey = new ConcurrentHashMap<>();
+    private final Map<UUID, String> keysById = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> trigrams = new ConcurrentHashMap<>();
+    private final AtomicLong version = new AtomicLong();
+
+    public void rebuild(Collection<User> users) {
+        sorted.clear();
+        emailsByKey.clear();
+        keysById.clear();
+        trigrams.clear();
+        for (User user : users) {
+            add(user);
+        }
+        version.incrementAndGet();
+    }
+
+    public void add(User user) {
+        if (user.getEmail() == null) {
+            return;
+        }
+        String key = normalize(user.getEmail());
+        String previous = keysById.put(user.getId(), key);
+        if (previous != null && !previous.equals(key)) {
+            removeKey(previous);
+        }
+        emailsByKey.put(key, user.getEmail());
+        sorted.add(key);
+        for (int i = 0; i + GRAM <= key.length(); i++) {
+            trigrams.computeIfAbsent(key.substring(i, i + GRAM), k -> ConcurrentHashMap.newKeySet()).add(key);
+        }
+        version.incrementAndGet();
+    }
+
+    public void remove(UUID userId) {
+        String key = keysById.remove(userId);
+        if (key != null) {
+            removeKey(key);
+            version.incrementAndGet();
+        }
+    }
+
+    private void removeKey(String key) {
+        sorted.remove(key);
+        emailsByKey.remove(key);
+        for (int i = 0; i + GRAM <= key.length(); i++) {
+            Set<String> postings = trigrams.get(key.substring(i, i + GRAM));
+            if (postings != null) {
+                postings.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Direcciones que empiezan por el prefijo, en orden alfabético.
+     */
+    public List<String> findByPrefix(String prefix, int limit) {
+        String key = normalize(prefix);
+        List<String> result = new ArrayList<>(Math.min(limit, 16));
+        for (String candidate : sorted.tailSet(key, true)) {
+            if (result.size() >= limit || !candidate.startsWith(key)) {
+                break;
+            }
+            String email = emailsByKey.get(candidate);
+            if (email != null) {
+                result.add(email);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Direcciones que contienen el fragmento sin empezar por él.
+     */
+    public List<String> findBySubstring(String fragment, int limit) {
+        String key = normalize(fragment);
+        List<String> result = new ArrayList<>(Math.min(limit, 16));
+        if (limit <= 0 || key.isEmpty()) {
+            return result;
+        }
+
+        Iterable<String> candidates = key.length() < GRAM ? sorted : smallestPostings(key);
+        for (String candidate : candidates) {
+            if (result.size() >= limit) {
+                break;
+            }
+            if (!candidate.startsWith(key) && candidate.contains(key)) {
+                String email = emailsByKey.get(candidate);
+                if (email != null) {
+                    result.add(email);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Todas las claves que contienen el fragmento, o null si podrían ser más de {@code max}
+     * (fragmentos de menos de tres letras o trigramas demasiado comunes).
+     */
+    List<String> findAllContaining(String fragment, int max) {
+        String key = normalize(fragment);
+        Collection<String> candidates;
+        if (key.length() < GRAM) {
+            if (emailsByKey.size() > max) {
+                return null;
+            }
+            candidates = sorted;
+        } else {
+            candidates = smallestPostings(key);
+            if (candidates.size() > max) {
+                return null;
+            }
+        }
+        List<String> result = new ArrayList<>();
+        for (String candidate : candidates) {
+            if (candidate.contains(key)) {
+                result.add(candidate);
+            }
+        }
+        return result;
+    }
+
+    private Set<String> smallestPostings(String key) {
+        Set<String> smallest = null;
+        for (int i = 0; i + GRAM <= key.length(); i++) {
+            Set<String> postings = trigrams.get(key.substring(i, i + GRAM));
+            if (postings == null) {
+                return Set.of();
+            }
+            if (smallest == null || postings.size() < smallest.size()) {
+                smallest = postings;
+            }
+        }
+        return smallest;
+    }
+
+    /**
+     * Claves normalizadas en orden, para recorridos como el de {@link FuzzyMatcher}.
+     */
+    NavigableSet<String> keys() {
+        return Collections.unmodifiableNavigableSet(sorted);
+    }
+
+    /**
+     * Dirección original (con sus mayúsculas) de una clave normalizada, o null si ya no existe.
+     */
+    String emailOf(String key) {
+        return emailsByKey.get(key);
+    }
+
+    public int size() {
+        return sorted.size();
+    }
+
+    /**
+     * Cambia cada vez que se agrega o elimina una dirección.
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    @Override
+    public void userSaved(User user) {
+        add(user);
+    }
+
+    @Override
+    public void userDeleted(UUID id) {
+        remove(id);
+    }
+
+    static String normalize(String text) {
+        return text.trim().toLowerCase(Locale.ROOT);
+    }
+}
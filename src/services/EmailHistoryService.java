@@ -1,24 +1,103 @@
 package services;
 
+import models.AddressUsage;
 import models.User;
+import persistence.dao.AddressUsageDao;
 import persistence.dao.UserDao;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
 
 /**
  * Servicio para manejar el historial de direcciones de correo utilizadas
- * Permite autocompletar direcciones basándose en el historial del usuario
+ * Permite autocompletar direcciones basándose en el historial del usuario.
+ * El historial de cada usuario se carga de la base la primera vez que se usa y los cambios se
+ * escriben en segundo plano (por lotes, cada FLUSH_INTERVAL_SECONDS y al cerrar la aplicación).
  */
 public class EmailHistoryService {
+    public static final int FLUSH_INTERVAL_SECONDS = 30;
+    public static final int TOP_CAPACITY = 32;
+    public static final long FUZZY_BUDGET_NANOS = 10_000_000L;
+    public static final int CACHE_CANDIDATES = 256;
+
     private final UserDao userDao;
-    private final Map<String, Set<String>> userEmailHistory;
-    private final Map<String, Integer> emailFrequency;
+    private final AddressUsageDao addressUsageDao;
+    private final AddressIndex addressIndex;
+    private volatile boolean indexLoaded;
+    private final Map<UUID, UserHistory> histories = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService flusher;
+    private final LongAdder recordedUses = new LongAdder();
+    private final LongAdder searches = new LongAdder();
+    private final LongAdder flushedRows = new LongAdder();
+    private final LongAdder fuzzyTimeouts = new LongAdder();
 
-    public EmailHistoryService(UserDao userDao) {
+    public EmailHistoryService(UserDao userDao, AddressUsageDao addressUsageDao) {
         this.userDao = userDao;
-        this.userEmailHistory = new HashMap<>();
-        this.emailFrequency = new HashMap<>();
+        this.addressUsageDao = addressUsageDao;
+        this.addressIndex = new AddressIndex();
+        userDao.addChangeListener(addressIndex);
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "email-history-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushQuietly, FLUSH_INTERVAL_SECONDS, FLUSH_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Direcciones usadas por un usuario y las que aún no se han escrito en la base.
+     * Las escrituras de un mismo usuario se serializan con el propio objeto; las lecturas no
+     * bloquean: usan el mapa concurrente, el contador y la copia inmutable del top publicada en
+     * {@code topSnapshot}. {@code flushLock} solo ordena el volcado a la base frente a la limpieza.
+     */
+    private static final class UserHistory {
+        private final Map<String, AddressUsage> usages = new ConcurrentHashMap<>();
+        private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+        private final TopKTracker top = new TopKTracker(TOP_CAPACITY);
+        private final LongAdder totalUses = new LongAdder();
+        private final Object flushLock = new Object();
+        private volatile List<String> topSnapshot = List.of();
+        /** Cambia cuando aparece o desaparece una dirección del historial. */
+        private volatile long version;
+
+        private void put(AddressUsage usage) {
+            usages.put(usage.getEmail(), usage);
+            top.update(usage.getEmail(), usage.getScoreKey());
+        }
+
+        private void publishTop() {
+            topSnapshot = List.copyOf(top.top(TOP_CAPACITY));
+        }
+    }
+
+    /**
+     * Carga el historial del usuario (por ejemplo al iniciar sesión); si ya estaba cargado no hace nada.
+     */
+    public void loadUser(User user) {
+        if (user != null) {
+            history(user);
+        }
+    }
+
+    private UserHistory history(User user) {
+        UserHistory history = histories.get(user.getId());
+        if (history != null) {
+            return history;
+        }
+        return histories.computeIfAbsent(user.getId(), id -> {
+            UserHistory loaded = new UserHistory();
+            for (AddressUsage usage : addressUsageDao.findByUser(user)) {
+                loaded.put(usage);
+                loaded.totalUses.add(usage.getUseCount());
+            }
+            loaded.publishTop();
+            return loaded;
+        });
     }
 
     /**
@@ -29,19 +108,85 @@ public class EmailHistoryService {
             return;
         }
 
-        String userId = user.getId().toString();
-        userEmailHistory.computeIfAbsent(userId, k -> new HashSet<>());
-        
-        for (String email : emails) {
-            if (email != null && !email.trim().isEmpty()) {
-                String cleanEmail = email.trim().toLowerCase();
-                userEmailHistory.get(userId).add(cleanEmail);
+        UserHistory history = history(user);
+        long now = System.currentTimeMillis();
+        synchronized (history) {
+            for (String email : emails) {
+                if (email != null && !email.trim().isEmpty()) {
+                    String cleanEmail = email.trim().toLowerCase();
+                    AddressUsage usage = history.usages.get(cleanEmail);
+                    if (usage == null) {
+                        history.put(AddressUsage.firstUse(cleanEmail, now));
+                        history.version++;
+                    } else {
+                        usage.recordUse(now);
+                        history.top.update(cleanEmail, usage.getScoreKey());
+                    }
+                    history.totalUses.increment();
+                    history.dirty.add(cleanEmail);
+                    recordedUses.increment();
+                }
+            }
+            history.publishTop();
+        }
+    }
 
-                emailFrequency.merge(cleanEmail, 1, Integer::sum);
+    /**
+     * Escribe en la base los usos pendientes de todos los usuarios. Las filas se copian bajo el
+     * bloqueo del usuario y se escriben fuera de él, así que enviar correo no espera a la base.
+     */
+    public void flush() {
+        for (Map.Entry<UUID, UserHistory> entry : histories.entrySet()) {
+            UserHistory history = entry.getValue();
+            synchronized (history.flushLock) {
+                List<AddressUsage> pending;
+                synchronized (history) {
+                    if (history.dirty.isEmpty()) {
+                        continue;
+                    }
+                    pending = new ArrayList<>(history.dirty.size());
+                    for (String email : history.dirty) {
+                        AddressUsage usage = history.usages.get(email);
+                        pending.add(new AddressUsage(usage.getEmail(), usage.getScoreKey(), usage.getLastUsed(), usage.getUseCount()));
+                    }
+                    history.dirty.clear();
+                }
+                try {
+                    addressUsageDao.saveAll(entry.getKey(), pending);
+                    flushedRows.add(pending.size());
+                } catch (RuntimeException e) {
+                    // Se vuelven a marcar para el siguiente intento
+                    for (AddressUsage usage : pending) {
+                        history.dirty.add(usage.getEmail());
+                    }
+                    throw e;
+                }
             }
         }
     }
 
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            System.err.println("Error al guardar el historial de direcciones: " + e.getMessage());
+        }
+    }
+
+    public String getStats() {
+        return String.format("usuarios=%d, usos registrados=%d, búsquedas=%d, aproximadas cortadas por tiempo=%d, filas guardadas=%d",
+                histories.size(), recordedUses.sum(), searches.sum(), fuzzyTimeouts.sum(), flushedRows.sum());
+    }
+
+    /**
+     * Guarda lo pendiente y detiene la escritura periódica.
+     */
+    public void close() {
+        flusher.shutdown();
+        flushQuietly();
+        System.out.println("Historial de direcciones: " + getStats());
+    }
+
     /**
      * Obtiene las direcciones de correo más utilizadas por el usuario
      */
@@ -50,16 +195,16 @@ public class EmailHistoryService {
             return new ArrayList<>();
         }
 
-        String userId = user.getId().toString();
-        Set<String> userEmails = userEmailHistory.getOrDefault(userId, new HashSet<>());
-        
-        return userEmails.stream()
-                .sorted((email1, email2) -> {
-                    int freq1 = emailFrequency.getOrDefault(email1, 0);
-                    int freq2 = emailFrequency.getOrDefault(email2, 0);
-                    return Integer.compare(freq2, freq1); // Orden descendente por frecuencia
-                })
+        UserHistory history = history(user);
+        List<String> top = history.topSnapshot;
+        if (limit <= TOP_CAPACITY) {
+            return new ArrayList<>(top.subList(0, Math.min(limit, top.size())));
+        }
+        // Más de lo que se sigue incrementalmente: se ordena el historial completo
+        return history.usages.values().stream()
+                .sorted(Comparator.comparingDouble(AddressUsage::getScoreKey).reversed()) // Más reciente y frecuente primero
                 .limit(limit)
+                .map(AddressUsage::getEmail)
                 .collect(Collectors.toList());
     }
 
@@ -67,6 +212,14 @@ public class EmailHistoryService {
      * Busca direcciones de correo que coincidan con el patrón ingresado
      */
     public List<String> searchEmails(User user, String pattern, int limit) {
+        return searchEmails(user, pattern, limit, null);
+    }
+
+    /**
+     * Igual que {@link #searchEmails(User, String, int)}, pero reutiliza las candidatas de la consulta
+     * anterior del mismo campo cuando el nuevo texto la extiende.
+     */
+    public List<String> searchEmails(User user, String pattern, int limit, NarrowingQueryCache cache) {
         if (user == null || pattern == null) {
             return new ArrayList<>();
         }
@@ -77,32 +230,142 @@ public class EmailHistoryService {
             return new ArrayList<>();
         }
 
-        List<User> allUsers = userDao.findAll();
-        
-        // Buscar usuarios que coincidan con el patrón (que comiencen con el string)
-        List<String> matches = allUsers.stream()
-                .map(User::getEmail)
-                .filter(email -> email != null && email.toLowerCase().startsWith(lowerPattern))
-                .distinct()
-                .limit(limit)
-                .collect(Collectors.toList());
+        searches.increment();
+        AddressIndex index = getAddressIndex();
+        UserHistory history = history(user);
+        Map<String, Candidate> candidates = new HashMap<>();
 
-        // Si no hay suficientes resultados con startsWith, buscar con contains
-        if (matches.size() < limit) {
-            List<String> containsMatches = allUsers.stream()
-                    .map(User::getEmail)
-                    .filter(email -> email != null && email.toLowerCase().contains(lowerPattern))
-                    .filter(email -> !matches.contains(email))
-                    .distinct()
-                    .limit(limit - matches.size())
-                    .collect(Collectors.toList());
-            
-            matches.addAll(containsMatches);
+        // Coincidencias exactas: las que comienzan con el patrón y luego las que lo contienen,
+        // del historial del usuario y del directorio
+        long directoryVersion = index.getVersion();
+        long historyVersion = history.version;
+        List<String> cached = cache != null ? cache.find(user.getId(), lowerPattern, directoryVersion, historyVersion) : null;
+        if (cached == null && cache != null) {
+            // Solo se guarda el conjunto completo si acotarlo es barato (trigramas poco comunes)
+            List<String> all = index.findAllContaining(lowerPattern, CACHE_CANDIDATES);
+            if (all != null) {
+                Set<String> keys = new LinkedHashSet<>(all);
+                for (String key : history.usages.keySet()) {
+                    if (key.contains(lowerPattern)) {
+                        keys.add(key);
+                    }
+                }
+                cached = new ArrayList<>(keys);
+                Collections.sort(cached);
+                cache.put(user.getId(), lowerPattern, directoryVersion, historyVersion, cached);
+            }
         }
 
+        if (cached != null) {
+            // Las candidatas están en orden alfabético: fuera del historial basta con las primeras
+            // de cada tipo de coincidencia
+            int prefixes = 0;
+            int substrings = 0;
+            for (String key : cached) {
+                boolean prefix = key.startsWith(lowerPattern);
+                if (history.usages.containsKey(key) || (prefix ? prefixes++ < limit : substrings++ < limit)) {
+                    String email = index.emailOf(key);
+                    offer(candidates, key, email != null ? email : key, prefix ? 0 : 1);
+                }
+            }
+        } else {
+            for (AddressUsage usage : history.usages.values()) {
+                String key = usage.getEmail();
+                if (key.startsWith(lowerPattern)) {
+                    offer(candidates, key, usage.getEmail(), 0);
+                } else if (key.contains(lowerPattern)) {
+                    offer(candidates, key, usage.getEmail(), 1);
+                }
+            }
+            for (String email : index.findByPrefix(lowerPattern, limit)) {
+                offer(candidates, AddressIndex.normalize(email), email, 0);
+            }
+            if (candidates.size() < limit) {
+                for (String email : index.findBySubstring(lowerPattern, limit - candidates.size())) {
+                    offer(candidates, AddressIndex.normalize(email), email, 1);
+                }
+            }
+        }
+
+        // Si no alcanza, direcciones parecidas (errores de tipeo) dentro del presupuesto de tiempo
+        if (candidates.size() < limit && lowerPattern.length() >= FuzzyMatcher.MIN_QUERY_LENGTH) {
+            FuzzyMatcher matcher = new FuzzyMatcher(lowerPattern, System.nanoTime() + FUZZY_BUDGET_NANOS).limit(limit);
+            // Primero el historial (pocas direcciones y las más probables), luego el directorio
+            for (FuzzyMatcher.Match match : matcher.search(history.usages.keySet())) {
+                offer(candidates, match.key, match.key, 2 + match.distance);
+            }
+            for (FuzzyMatcher.Match match : matcher.search(index.keys())) {
+                String email = index.emailOf(match.key);
+                if (email != null) {
+                    offer(candidates, match.key, email, 2 + match.distance);
+                }
+            }
+            if (matcher.isTimedOut()) {
+                fuzzyTimeouts.increment();
+            }
+        }
+
+        // Orden: calidad de la coincidencia y, a igual calidad, frecency del usuario
+        List<Candidate> ranked = new ArrayList<>(candidates.values());
+        for (Candidate candidate : ranked) {
+            AddressUsage usage = history.usages.get(candidate.key);
+            candidate.scoreKey = usage != null ? usage.getScoreKey() : Double.NEGATIVE_INFINITY;
+        }
+        ranked.sort(Comparator.comparingInt((Candidate c) -> c.quality)
+                .thenComparing(Comparator.comparingDouble((Candidate c) -> c.scoreKey).reversed())
+                .thenComparing(c -> c.key));
+
+        List<String> matches = new ArrayList<>(Math.min(limit, ranked.size()));
+        for (int i = 0; i < ranked.size() && i < limit; i++) {
+            matches.add(ranked.get(i).email);
+        }
         return matches;
     }
 
+    /**
+     * Dirección candidata; quality 0 = prefijo, 1 = subcadena, 2 + d = parecida a distancia d.
+     */
+    private static final class Candidate {
+        private final String key;
+        private String email;
+        private int quality;
+        private double scoreKey;
+
+        private Candidate(String key, String email, int quality) {
+            this.key = key;
+            this.email = email;
+            this.quality = quality;
+        }
+    }
+
+    private static void offer(Map<String, Candidate> candidates, String key, String email, int quality) {
+        Candidate existing = candidates.get(key);
+        if (existing == null) {
+            candidates.put(key, new Candidate(key, email, quality));
+            return;
+        }
+        existing.quality = Math.min(existing.quality, quality);
+        // Se prefiere la forma del directorio a la del historial (que está en minúsculas)
+        if (!email.equals(key)) {
+            existing.email = email;
+        }
+    }
+
+    /**
+     * Índice del directorio; se construye con una sola lectura de usuarios la primera vez que se usa
+     * y después se actualiza con las altas y bajas.
+     */
+    public AddressIndex getAddressIndex() {
+        if (!indexLoaded) {
+            synchronized (addressIndex) {
+                if (!indexLoaded) {
+                    addressIndex.rebuild(userDao.findAll());
+                    indexLoaded = true;
+                }
+            }
+        }
+        return addressIndex;
+    }
 
     /**
      * Obtiene todas las direcciones de correo del historial del usuario
@@ -112,8 +375,7 @@ public class EmailHistoryService {
             return new HashSet<>();
         }
 
-        String userId = user.getId().toString();
-        return new HashSet<>(userEmailHistory.getOrDefault(userId, new HashSet<>()));
+        return new HashSet<>(history(user).usages.keySet());
     }
 
     /**
@@ -124,8 +386,18 @@ public class EmailHistoryService {
             return;
         }
 
-        String userId = user.getId().toString();
-        userEmailHistory.remove(userId);
+        UserHistory history = history(user);
+        synchronized (history.flushLock) {
+            synchronized (history) {
+                history.usages.clear();
+                history.dirty.clear();
+                history.top.clear();
+                history.totalUses.reset();
+                history.version++;
+                history.publishTop();
+            }
+            addressUsageDao.deleteByUser(user);
+        }
     }
 
     /**
@@ -135,15 +407,13 @@ public class EmailHistoryService {
         Map<String, Object> stats = new HashMap<>();
         
         if (user != null) {
-            String userId = user.getId().toString();
-            Set<String> userEmails = userEmailHistory.getOrDefault(userId, new HashSet<>());
-            
-            stats.put("totalEmails", userEmails.size());
-            stats.put("totalFrequency", emailFrequency.size());
-            
+            UserHistory history = history(user);
+            List<String> top = history.topSnapshot;
+            stats.put("totalEmails", history.usages.size());
+            stats.put("totalFrequency", history.totalUses.intValue());
+
             // Top 5 emails más frecuentes
-            List<String> topEmails = getFrequentEmails(user, 5);
-            stats.put("topEmails", topEmails);
+            stats.put("topEmails", new ArrayList<>(top.subList(0, Math.min(5, top.size()))));
         }
         
         return stats;
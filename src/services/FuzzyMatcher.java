@@ -0,0 +1,228 @@
+package services;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableSet;
+
+/**
+ * Búsqueda tolerante a errores de tipeo: distancia de Damerau-Levenshtein (con transposiciones
+ * adyacentes) entre la consulta y el mejor prefijo de cada dirección, acotada a {@code maxDistance}.
+ * Sobre un conjunto ordenado se recorre como un trie implícito: las filas de la tabla se reutilizan
+ * para el prefijo común con la dirección anterior y, cuando una fila supera la cota, se salta de
+ * una vez todo el rango de direcciones que empiezan por ese prefijo.
+ * La búsqueda se corta al alcanzar el plazo indicado y devuelve lo encontrado hasta entonces.
+ */
+final class FuzzyMatcher {
+
+    static final int MIN_QUERY_LENGTH = 3;
+    private static final int DEADLINE_CHECK_MASK = 63;
+
+    static final class Match {
+        final String key;
+        final int distance;
+
+        Match(String key, int distance) {
+            this.key = key;
+            this.distance = distance;
+        }
+    }
+
+    private final char[] query;
+    private final long deadline;
+    private final int[] countByDistance;
+    private int maxDistance;
+    private int limit;
+    private int[][] rows;
+    private int[] rowMin;
+    private int[] best;
+    private boolean timedOut;
+    private boolean full;
+    private int visited;
+
+    FuzzyMatcher(String query, long deadlineNanos) {
+        this.query = query.toCharArray();
+        this.deadline = deadlineNanos;
+        this.maxDistance = maxDistanceFor(query.length());
+        this.countByDistance = new int[maxDistance + 1];
+        this.limit = Integer.MAX_VALUE;
+        this.rows = new int[64][];
+        this.rowMin = new int[64];
+        this.best = new int[64];
+        int[] first = new int[this.query.length + 1];
+        for (int j = 0; j < first.length; j++) {
+            first[j] = j;
+        }
+        rows[0] = first;
+        rowMin[0] = 0;
+        best[0] = this.query.length;
+    }
+
+    /**
+     * Errores admitidos según la longitud de lo tecleado.
+     */
+    static int maxDistanceFor(int length) {
+        if (length < MIN_QUERY_LENGTH) return 0;
+        return length < 6 ? 1 : 2;
+    }
+
+    /**
+     * Cantidad de coincidencias que interesan; al alcanzarla solo se siguen buscando mejores.
+     */
+    FuzzyMatcher limit(int limit) {
+        this.limit = limit;
+        return this;
+    }
+
+    boolean isTimedOut() {
+        return timedOut;
+    }
+
+    int getVisited() {
+        return visited;
+    }
+
+    /**
+     * Recorre un conjunto ordenado saltando los rangos que ya no pueden coincidir.
+     */
+    List<Match> search(NavigableSet<String> keys) {
+        List<Match> matches = new ArrayList<>();
+        String previous = "";
+        int validDepth = 0;
+        String key = keys.isEmpty() ? null : keys.first();
+        while (key != null && !full && !expired()) {
+            int common = Math.min(commonPrefix(previous, key), validDepth);
+            int depth = scan(key, common, matches);
+            previous = key;
+            if (depth < 0) {
+                // Fila podada en -depth: ninguna dirección con ese prefijo puede coincidir
+                validDepth = -depth;
+                key = keys.higher(key.substring(0, -depth) + Character.MAX_VALUE);
+            } else {
+                validDepth = depth;
+                key = keys.higher(key);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Recorre una colección sin orden (por ejemplo el historial de un usuario).
+     */
+    List<Match> search(Collection<String> keys) {
+        List<Match> matches = new ArrayList<>();
+        String previous = "";
+        int validDepth = 0;
+        Iterator<String> iterator = keys.iterator();
+        while (iterator.hasNext() && !full && !expired()) {
+            String key = iterator.next();
+            int common = Math.min(commonPrefix(previous, key), validDepth);
+            int depth = scan(key, common, matches);
+            previous = key;
+            validDepth = Math.abs(depth);
+        }
+        return matches;
+    }
+
+    private boolean expired() {
+        if ((++visited & DEADLINE_CHECK_MASK) == 0 && System.nanoTime() > deadline) {
+            timedOut = true;
+        }
+        return timedOut;
+    }
+
+    /**
+     * Completa las filas desde {@code common} y registra la coincidencia si la hay.
+     * Devuelve la última fila válida, o -(fila) si la fila se podó.
+     */
+    private int scan(String key, int common, List<Match> matches) {
+        int i = common;
+        while (i < key.length()) {
+            // El resultado ya no puede mejorar: vale para todo lo que empiece igual
+            if (best[i] <= maxDistance && rowMin[i] >= best[i]) {
+                break;
+            }
+            i++;
+            ensureCapacity(i);
+            computeRow(key, i);
+            if (rowMin[i] > maxDistance && (i < 2 || rowMin[i - 1] >= maxDistance) && best[i] > maxDistance) {
+                return -i;
+            }
+        }
+
+        int distance = best[i];
+        if (distance <= maxDistance) {
+            matches.add(new Match(key, distance));
+            tighten(distance);
+        }
+        return i;
+    }
+
+    private void computeRow(String key, int i) {
+        int m = query.length;
+        int[] row = rows[i];
+        int[] above = rows[i - 1];
+        int[] twoAbove = i >= 2 ? rows[i - 2] : null;
+        char c = key.charAt(i - 1);
+        char previousChar = i >= 2 ? key.charAt(i - 2) : 0;
+
+        row[0] = i;
+        int min = i;
+        for (int j = 1; j <= m; j++) {
+            int cost = c == query[j - 1] ? 0 : 1;
+            int value = Math.min(Math.min(above[j] + 1, row[j - 1] + 1), above[j - 1] + cost);
+            if (twoAbove != null && j >= 2 && c == query[j - 2] && previousChar == query[j - 1]) {
+                value = Math.min(value, twoAbove[j - 2] + 1);
+            }
+            row[j] = value;
+            if (value < min) {
+                min = value;
+            }
+        }
+        rowMin[i] = min;
+        best[i] = Math.min(best[i - 1], row[m]);
+    }
+
+    /**
+     * Con {@code limit} coincidencias a distancia d o menor, solo interesan las estrictamente mejores:
+     * la cota baja a d - 1 y la poda se vuelve más agresiva. Con d = 0 ya no hay nada mejor que buscar.
+     */
+    private void tighten(int distance) {
+        countByDistance[distance]++;
+        int total = 0;
+        for (int d = 0; d <= maxDistance; d++) {
+            total += countByDistance[d];
+            if (total >= limit) {
+                if (d == 0) {
+                    full = true;
+                } else {
+                    maxDistance = d - 1;
+                }
+                return;
+            }
+        }
+    }
+
+    private void ensureCapacity(int depth) {
+        if (depth >= rows.length) {
+            int size = Math.max(depth + 1, rows.length * 2);
+            rows = Arrays.copyOf(rows, size);
+            rowMin = Arrays.copyOf(rowMin, size);
+            best = Arrays.copyOf(best, size);
+        }
+        if (rows[depth] == null) {
+            rows[depth] = new int[query.length + 1];
+        }
+    }
+
+    private static int commonPrefix(String a, String b) {
+        int n = Math.min(a.length(), b.length());
+        int i = 0;
+        while (i < n && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        return i;
+    }
+}
@@ -1,29 +1,58 @@
 package services;
 
+import config.ConnectionPool;
 import config.MailServerConfig;
+import models.FolderCounter;
 import models.Mail;
+import models.MailCursor;
+import models.MailPage;
+import models.MailboxChanges;
 import models.User;
+import models.UserLookup;
 import models.UserMail;
+import persistence.dao.FolderCounterDao;
 import persistence.dao.MailDao;
+import persistence.dao.MailSearchDao;
 import persistence.dao.UserDao;
 import persistence.dao.UserMailDao;
 import utils.MailFolder;
 
+import java.sql.SQLException;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
 
 public class InternalMailService {
     private final MailDao mailDao;
     private final UserMailDao userMailDao;
     private final UserDao userDao;
+    private final FolderCounterDao folderCounterDao;
+    private final MailSearchDao mailSearchDao;
+    private final ConnectionPool connectionPool;
+    private final MailEventBus eventBus = new MailEventBus();
+
+    private final LongAdder deliveredMails = new LongAdder();
+    private final LongAdder deliveredCopies = new LongAdder();
+    private final LongAdder deliveryNanos = new LongAdder();
+    private final AtomicLong maxDeliveryNanos = new AtomicLong();
     private MailServerConfig serverConfig;
 
-    public InternalMailService(MailDao mailDao, UserMailDao userMailDao, UserDao userDao) {
+    public InternalMailService(MailDao mailDao, UserMailDao userMailDao, UserDao userDao, FolderCounterDao folderCounterDao,
+                               MailSearchDao mailSearchDao, ConnectionPool connectionPool) {
         this.mailDao = mailDao;
         this.userMailDao = userMailDao;
         this.userDao = userDao;
+        this.folderCounterDao = folderCounterDao;
+        this.mailSearchDao = mailSearchDao;
+        this.connectionPool = connectionPool;
         // Configuración por defecto para simulación
         this.serverConfig = new MailServerConfig("smtp.palermo.edu", 587, "", "", true, true);
     }
@@ -36,13 +65,35 @@ public class InternalMailService {
         return serverConfig;
     }
 
+    /**
+     * Cambios confirmados en los buzones, para que las vistas abiertas los apliquen sin volver a consultar.
+     */
+    public MailEventBus getEventBus() {
+        return eventBus;
+    }
+
+    /**
+     * Resuelve todas las direcciones con una búsqueda por lotes; las desconocidas se descartan.
+     */
     public List<User> findUsersByEmails(String[] emails) {
-        List<User> users = new ArrayList<>();
+        return lookupUsersByEmails(emails).getUsers();
+    }
+
+    /**
+     * Resuelve todas las direcciones con una búsqueda por lotes e informa cuáles no existen.
+     */
+    public UserLookup lookupUsersByEmails(String[] emails) {
+        List<String> cleanEmails = new ArrayList<>(emails.length);
         for (String email : emails) {
-            userDao.findByEmail(email.trim())
-                    .ifPresent(users::add);
+            String cleanEmail = email.trim();
+            if (!cleanEmail.isEmpty()) {
+                cleanEmails.add(cleanEmail);
+            }
+        }
+        if (cleanEmails.isEmpty()) {
+            return new UserLookup(Map.of(), List.of());
         }
-        return users;
+        return userDao.findByEmails(cleanEmails);
     }
 
     public void sendMail(User from, List<User> recipients, String subject, String message) {
@@ -52,37 +103,127 @@ public class InternalMailService {
                 recipients,
                 new ArrayList<>(),
                 new ArrayList<>(),
-                null,
+                LocalDateTime.now(),
                 subject,
                 message
         );
-        mailDao.save(mail);
-
-        UserMail sentMail = new UserMail(from, mail, MailFolder.SENT);
-        userMailDao.save(sentMail);
-
-        for (User recipient : recipients) {
-            UserMail receivedMail = new UserMail(recipient, mail, MailFolder.INBOX);
-            userMailDao.save(receivedMail);
-        }
+        deliver(mail, recipients);
     }
 
     public List<UserMail> findByUserAndFolder(User user, MailFolder folder) {
         return userMailDao.findByUserAndFolder(user, folder);
     }
 
+    public MailPage findPageByUserAndFolder(User user, MailFolder folder, MailCursor after, int limit) {
+        return userMailDao.findPageByUserAndFolder(user, folder, after, limit);
+    }
+
+    public MailCursor findCursor(User user, MailFolder folder, MailCursor after, int skip) {
+        return userMailDao.findCursor(user, folder, after, skip);
+    }
+
+    public int countByUserAndFolder(User user, MailFolder folder) {
+        return userMailDao.countByUserAndFolder(user, folder);
+    }
+
+    public long findModseq(User user) {
+        return userMailDao.findModseq(user);
+    }
+
+    /**
+     * Cambios del buzón posteriores al número de modificación dado (ver {@link UserMailDao#findChangesSince}).
+     */
+    public MailboxChanges findChangesSince(User user, long modseq, int limit) {
+        return userMailDao.findChangesSince(user, modseq, limit);
+    }
+
     public List<Mail> findSentByUser(User user) {
         return findByUserAndFolder(user, MailFolder.SENT).stream()
                 .map(UserMail::getMail)
                 .toList();
     }
 
+    /**
+     * Completa el cuerpo de un correo cargado solo con su cabecera.
+     */
+    public Mail loadBody(Mail mail) {
+        if (!mail.isBodyLoaded()) {
+            mail.setMessage(mailDao.findBody(mail.getId()));
+        }
+        return mail;
+    }
+
+    public void readBody(Mail mail, MailDao.BodyReader reader) {
+        mailDao.readBody(mail.getId(), reader);
+    }
+
     public void markAsRead(User user, Mail mail) {
         userMailDao.markAsRead(user, mail);
+        publish(new MailboxEvent.FlagsChanged(user.getId(), null, Set.of(mail.getId()), true));
     }
 
     public void markAsDeleted(User user, Mail mail) {
         userMailDao.markAsDeleted(user, mail);
+        publish(new MailboxEvent.Deleted(user.getId(), null, Set.of(mail.getId())));
+    }
+
+    // Operaciones por conjunto: cada una es una sola sentencia dentro de una transacción
+    // y devuelve la cantidad de correos afectados
+
+    public int markAsRead(User user, Collection<UUID> mailIds, boolean read) {
+        return inTransaction("Error al marcar los correos",
+                () -> publish(userMailDao.markAllAsRead(user, mailIds, read),
+                        new MailboxEvent.FlagsChanged(user.getId(), null, Set.copyOf(mailIds), read)));
+    }
+
+    public int markFolderAsRead(User user, MailFolder folder) {
+        return inTransaction("Error al marcar la carpeta como leída",
+                () -> publish(userMailDao.markFolderAsRead(user, folder), new MailboxEvent.FlagsChanged(user.getId(), folder, Set.of(), true)));
+    }
+
+    public int markAsDeleted(User user, Collection<UUID> mailIds) {
+        return inTransaction("Error al marcar los correos como eliminados",
+                () -> publish(userMailDao.markAllAsDeleted(user, mailIds), new MailboxEvent.Deleted(user.getId(), null, Set.copyOf(mailIds))));
+    }
+
+    public int moveToFolder(User user, Collection<UUID> mailIds, MailFolder target) {
+        return inTransaction("Error al mover los correos",
+                () -> publish(userMailDao.moveAll(user, mailIds, target), new MailboxEvent.Moved(user.getId(), Set.copyOf(mailIds), target)));
+    }
+
+    public int moveToTrash(User user, Collection<UUID> mailIds) {
+        return moveToFolder(user, mailIds, MailFolder.TRASH);
+    }
+
+    /**
+     * Elimina definitivamente las copias del usuario; el correo sigue existiendo para los demás.
+     */
+    public int deleteMails(User user, Collection<UUID> mailIds) {
+        return inTransaction("Error al eliminar los correos",
+                () -> publish(userMailDao.deleteAll(user, mailIds), new MailboxEvent.Deleted(user.getId(), null, Set.copyOf(mailIds))));
+    }
+
+    public int emptyTrash(User user) {
+        return inTransaction("Error al vaciar la papelera",
+                () -> publish(userMailDao.deleteFolder(user, MailFolder.TRASH), new MailboxEvent.Deleted(user.getId(), MailFolder.TRASH, Set.of())));
+    }
+
+    /**
+     * Total, no leídos y tamaño de cada carpeta del usuario, leídos de los contadores mantenidos.
+     */
+    public Map<MailFolder, FolderCounter> getFolderCounters(User user) {
+        return userMailDao.findFolderCounters(user);
+    }
+
+    /**
+     * Tarea de reparación: recalcula todos los contadores desde los correos y devuelve cuántos corrigió.
+     */
+    public int repairFolderCounters() {
+        long start = System.nanoTime();
+        int repaired = folderCounterDao.rebuild();
+        System.out.printf("Contadores de carpetas recalculados en %.1f ms: %d corregidos%n",
+                (System.nanoTime() - start) / 1_000_000.0, repaired);
+        return repaired;
     }
 
     public Mail createDraft(User user, List<User> recipients, List<User> cc, List<User> bcc, String subject, String message) {
@@ -101,11 +242,13 @@ public class InternalMailService {
             message
         );
 
-        mailDao.save(draft);
-        
-        UserMail userMail = new UserMail(user, draft, MailFolder.DRAFTS);
-        userMailDao.save(userMail);
-        
+        inTransaction("Error al crear el borrador", () -> {
+            mailDao.save(draft);
+            userMailDao.save(new UserMail(user, draft, MailFolder.DRAFTS));
+            mailSearchDao.index(List.of(draft));
+            publish(new MailboxEvent.Delivered(user.getId(), MailFolder.DRAFTS, Set.of(draft.getId())));
+        });
+
         return draft;
     }
 
@@ -121,7 +264,18 @@ public class InternalMailService {
         draft.setMessage(message);
         draft.setDate(LocalDateTime.now());
 
-        mailDao.update(draft);
+        // El tamaño del borrador cambia con el texto: se ajusta el contador de DRAFTS, se reindexa y
+        // la fila recibe un nuevo número de modificación para que las vistas la vuelvan a leer
+        User owner = draft.getSender();
+        inTransaction("Error al actualizar el borrador", () -> {
+            folderCounterDao.track(List.of(owner.getId()), List.of(draft.getId()), () -> {
+                mailDao.update(draft);
+                userMailDao.touch(owner, List.of(draft.getId()));
+                mailSearchDao.index(List.of(draft));
+                return null;
+            });
+            publish(new MailboxEvent.Updated(owner.getId(), MailFolder.DRAFTS, Set.of(draft.getId())));
+        });
     }
 
     public void deleteDraft(User user, Mail draft) {
@@ -129,8 +283,12 @@ public class InternalMailService {
             throw new IllegalArgumentException("El usuario y el borrador no pueden ser nulos");
         }
 
-        userMailDao.delete(user, draft);
-        mailDao.delete(draft.getId());
+        inTransaction("Error al eliminar el borrador", () -> {
+            userMailDao.delete(user, draft);
+            mailDao.delete(draft.getId());
+            mailSearchDao.remove(List.of(draft.getId()));
+            publish(new MailboxEvent.Deleted(user.getId(), MailFolder.DRAFTS, Set.of(draft.getId())));
+        });
     }
 
     public void sendMail(User sender, List<User> recipients, List<User> cc, List<User> bcc, String subject, String message) {
@@ -155,21 +313,85 @@ public class InternalMailService {
             message
         );
 
-        mailDao.save(mail);
+        List<User> inboxOwners = new ArrayList<>(recipients);
+        inboxOwners.addAll(cc);
+        inboxOwners.addAll(bcc);
+        deliver(mail, inboxOwners);
+    }
 
-        for (User recipient : recipients) {
-            userMailDao.save(new UserMail(recipient, mail, MailFolder.INBOX));
+    /**
+     * Guarda el correo, la copia SENT del remitente y una copia INBOX por destinatario en una única
+     * transacción: o todos lo reciben o ninguno. Un mismo usuario recibe una sola copia, y el
+     * remitente conserva solo la de SENT (la clave de user_mails es usuario + correo).
+     */
+    private void deliver(Mail mail, List<User> inboxOwners) {
+        User sender = mail.getSender();
+        Map<UUID, UserMail> copies = new LinkedHashMap<>();
+        copies.put(sender.getId(), new UserMail(sender, mail, MailFolder.SENT));
+        for (User owner : inboxOwners) {
+            copies.putIfAbsent(owner.getId(), new UserMail(owner, mail, MailFolder.INBOX));
         }
 
-        for (User ccUser : cc) {
-            userMailDao.save(new UserMail(ccUser, mail, MailFolder.INBOX));
+        long start = System.nanoTime();
+        inTransaction("Error al entregar el correo", () -> {
+            mailDao.save(mail);
+            mailSearchDao.index(List.of(mail));
+            userMailDao.saveAll(new ArrayList<>(copies.values()));
+            for (UserMail copy : copies.values()) {
+                publish(new MailboxEvent.Delivered(copy.getUser().getId(), copy.getFolder(), Set.of(mail.getId())));
+            }
+        });
+        long elapsedNanos = System.nanoTime() - start;
+        deliveredMails.increment();
+        deliveredCopies.add(copies.size() - 1);
+        deliveryNanos.add(elapsedNanos);
+        maxDeliveryNanos.accumulateAndGet(elapsedNanos, Math::max);
+    }
+
+    /**
+     * Entregas acumuladas desde el inicio: correos, copias a destinatarios y tiempo de escritura.
+     */
+    public String getStats() {
+        long mails = deliveredMails.sum();
+        long copies = deliveredCopies.sum();
+        long nanos = deliveryNanos.sum();
+        return String.format("correos entregados=%d, destinatarios=%d, entrega media=%.1f ms, entrega máx=%.1f ms, %.0f destinatarios/s",
+                mails, copies, mails == 0 ? 0 : nanos / 1_000_000.0 / mails, maxDeliveryNanos.get() / 1_000_000.0,
+                copies * 1_000_000_000.0 / Math.max(1, nanos));
+    }
+
+    /**
+     * Publica el evento cuando se confirme la transacción en curso (enseguida si no hay una);
+     * si la transacción se revierte, no se publica. El envío al bus no bloquea.
+     */
+    private void publish(MailboxEvent event) {
+        connectionPool.afterCommit(() -> eventBus.publish(event));
+    }
+
+    private int publish(int affected, MailboxEvent event) {
+        if (affected > 0) {
+            publish(event);
         }
+        return affected;
+    }
 
-        for (User bccUser : bcc) {
-            userMailDao.save(new UserMail(bccUser, mail, MailFolder.INBOX));
+    private void inTransaction(String errorMessage, Runnable work) {
+        try {
+            connectionPool.inTransaction(connection -> {
+                work.run();
+                return null;
+            });
+        } catch (SQLException e) {
+            throw new RuntimeException(errorMessage, e);
         }
+    }
 
-        userMailDao.save(new UserMail(sender, mail, MailFolder.SENT));
+    private int inTransaction(String errorMessage, IntSupplier work) {
+        try {
+            return connectionPool.inTransaction(connection -> work.getAsInt());
+        } catch (SQLException e) {
+            throw new RuntimeException(errorMessage, e);
+        }
     }
 
     /**
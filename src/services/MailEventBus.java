@@ -0,0 +1,155 @@
+package services;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Bus de eventos de buzón dentro del proceso. Cada suscriptor tiene una cola acotada propia y
+ * recibe los eventos en lotes, en el ejecutor que eligió (por ejemplo, el hilo de eventos de Swing).
+ * Publicar nunca bloquea: el evento se fusiona con el último de la cola si es del mismo tipo y
+ * destino, y si la cola está llena se reemplaza por un {@link MailboxEvent.Resync} por usuario.
+ * Un suscriptor lento solo se retrasa a sí mismo.
+ */
+public class MailEventBus {
+
+    public static final int DEFAULT_CAPACITY = 256;
+
+    private static final ExecutorService DISPATCHER = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "mail-events");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    private final LongAdder published = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder overflows = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+
+    /**
+     * Suscribe un consumidor a los eventos de un usuario (o de todos con userId null), atendido en
+     * un hilo propio del bus.
+     */
+    public Subscription subscribe(String name, UUID userId, Consumer<List<MailboxEvent>> handler) {
+        return subscribe(name, userId, DEFAULT_CAPACITY, DISPATCHER, handler);
+    }
+
+    public Subscription subscribe(String name, UUID userId, int capacity, Executor executor, Consumer<List<MailboxEvent>> handler) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("La capacidad de la cola debe ser positiva");
+        }
+        Subscription subscription = new Subscription(name, userId, capacity, executor, handler);
+        subscriptions.add(subscription);
+        return subscription;
+    }
+
+    public void publish(MailboxEvent event) {
+        published.increment();
+        for (Subscription subscription : subscriptions) {
+            if (subscription.userId == null || subscription.userId.equals(event.userId())) {
+                subscription.offer(event);
+            }
+        }
+    }
+
+    public String getStats() {
+        long batchCount = batches.sum();
+        return String.format("publicados=%d, fusionados=%d, desbordes=%d, lotes=%d, eventos por lote=%.1f, suscriptores=%d",
+                published.sum(), coalesced.sum(), overflows.sum(), batchCount,
+                batchCount == 0 ? 0 : (double) delivered.sum() / batchCount, subscriptions.size());
+    }
+
+    public final class Subscription {
+        private final String name;
+        private final UUID userId;
+        private final int capacity;
+        private final Executor executor;
+        private final Consumer<List<MailboxEvent>> handler;
+        private final ArrayDeque<MailboxEvent> queue = new ArrayDeque<>();
+        private boolean scheduled;
+
+        private Subscription(String name, UUID userId, int capacity, Executor executor, Consumer<List<MailboxEvent>> handler) {
+            this.name = name;
+            this.userId = userId;
+            this.capacity = capacity;
+            this.executor = executor;
+            this.handler = handler;
+        }
+
+        private void offer(MailboxEvent event) {
+            boolean schedule;
+            synchronized (queue) {
+                MailboxEvent last = queue.peekLast();
+                MailboxEvent merged = last != null ? last.merge(event) : null;
+                if (merged != null) {
+                    queue.pollLast();
+                    queue.addLast(merged);
+                    coalesced.increment();
+                } else if (queue.size() < capacity) {
+                    queue.addLast(event);
+                } else {
+                    collapse(event);
+                }
+                schedule = !scheduled;
+                scheduled = true;
+            }
+            if (schedule) {
+                executor.execute(this::drain);
+            }
+        }
+
+        /**
+         * Cola llena: lo pendiente se resume en un pedido de relectura por usuario.
+         */
+        private void collapse(MailboxEvent event) {
+            overflows.increment();
+            Set<UUID> users = new LinkedHashSet<>();
+            for (MailboxEvent pending : queue) {
+                users.add(pending.userId());
+            }
+            users.add(event.userId());
+            queue.clear();
+            for (UUID user : users) {
+                queue.addLast(new MailboxEvent.Resync(user));
+            }
+        }
+
+        private void drain() {
+            List<MailboxEvent> batch;
+            synchronized (queue) {
+                batch = new ArrayList<>(queue);
+                queue.clear();
+                scheduled = false;
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+            batches.increment();
+            delivered.add(batch.size());
+            try {
+                handler.accept(batch);
+            } catch (RuntimeException e) {
+                System.err.println("Error en el suscriptor de eventos " + name + ": " + e.getMessage());
+            }
+        }
+
+        public void cancel() {
+            subscriptions.remove(this);
+            synchronized (queue) {
+                queue.clear();
+            }
+        }
+    }
+}
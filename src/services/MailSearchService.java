@@ -0,0 +1,362 @@
+package services;
+
+import models.FolderCounter;
+import models.Posting;
+import models.SearchPage;
+import models.User;
+import models.UserMail;
+import persistence.dao.MailSearchDao;
+import persistence.dao.UserMailDao;
+import utils.MailFolder;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+
+/**
+ * Búsqueda de texto completo en el buzón de un usuario sobre el índice invertido de MailSearchDao.
+ * Evalúa consultas booleanas y frases (ver {@link SearchQuery}) y ordena por relevancia con BM25:
+ * la frecuencia del término en el asunto cuenta SUBJECT_BOOST veces más que en el cuerpo.
+ */
+public class MailSearchService {
+
+    public static final int REBUILD_CHUNK = 500;
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    private static final int SUBJECT_BOOST = 3;
+    private static final long STATS_TTL_MILLIS = 5 * 60 * 1000;
+
+    private final MailSearchDao mailSearchDao;
+    private final UserMailDao userMailDao;
+
+    private volatile double averageLength;
+    private volatile long averageLengthLoadedAt;
+
+    private final LongAdder searches = new LongAdder();
+    private final LongAdder totalLatencyNanos = new LongAdder();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+    public MailSearchService(MailSearchDao mailSearchDao, UserMailDao userMailDao) {
+        this.mailSearchDao = mailSearchDao;
+        this.userMailDao = userMailDao;
+    }
+
+    /**
+     * Busca en una carpeta (o en todas si es null) y devuelve la página pedida de resultados,
+     * del más relevante al menos relevante; a igual relevancia, los más recientes primero.
+     */
+    public SearchPage search(User user, String query, MailFolder folder, int offset, int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("El tamaño de página debe ser positivo");
+        }
+        long start = System.nanoTime();
+        SearchQuery.Node node = query != null ? SearchQuery.parse(query) : null;
+        if (node == null) {
+            return new SearchPage(List.of(), offset, 0);
+        }
+
+        Evaluation evaluation = new Evaluation(user, folder, countDocuments(user, folder), getAverageLength());
+        Map<UUID, Double> scores = evaluation.evaluate(node);
+
+        List<UUID> ranked = new ArrayList<>(scores.keySet());
+        Comparator<UUID> byScore = Comparator.comparing(scores::get, Comparator.reverseOrder());
+        Comparator<UUID> byDate = Comparator.comparing(evaluation.dates::get, Comparator.nullsLast(Comparator.reverseOrder()));
+        ranked.sort(byScore.thenComparing(byDate).thenComparing(Comparator.naturalOrder()));
+
+        int from = Math.min(Math.max(0, offset), ranked.size());
+        List<UUID> pageIds = ranked.subList(from, Math.min(ranked.size(), from + limit));
+        Map<UUID, UserMail> headers = new HashMap<>();
+        for (UserMail userMail : userMailDao.findByUserAndMailIds(user, pageIds)) {
+            headers.put(userMail.getMail().getId(), userMail);
+        }
+        List<UserMail> items = new ArrayList<>(pageIds.size());
+        for (UUID id : pageIds) {
+            UserMail userMail = headers.get(id);
+            if (userMail != null) {
+                items.add(userMail);
+            }
+        }
+
+        long latency = System.nanoTime() - start;
+        searches.increment();
+        totalLatencyNanos.add(latency);
+        maxLatencyNanos.accumulateAndGet(latency, Math::max);
+        return new SearchPage(items, from, ranked.size());
+    }
+
+    /**
+     * Indexa solo los correos que faltan en el índice (por ejemplo, los anteriores a su creación),
+     * repartidos en bloques de REBUILD_CHUNK entre {@code threads} hilos. Lo ya indexado sigue
+     * disponible para buscar mientras tanto. Devuelve los correos indexados.
+     */
+    public int indexMissing(int threads) {
+        return reindexChunks(mailSearchDao::findUnindexedMailIdsAfter, threads, "Índice de búsqueda completado");
+    }
+
+    /**
+     * Vacía el índice y vuelve a indexar todos los correos, repartiendo bloques de REBUILD_CHUNK
+     * correos entre {@code threads} hilos (cada bloque en su propia transacción). Es la reparación
+     * explícita: hasta que termina, las búsquedas no encuentran los correos aún no procesados.
+     * Devuelve los correos indexados.
+     */
+    public int rebuildIndex(int threads) {
+        mailSearchDao.clear();
+        return reindexChunks(mailSearchDao::findMailIdsAfter, threads, "Índice de búsqueda reconstruido");
+    }
+
+    /**
+     * Verdadero si hay correos sin indexar.
+     */
+    public boolean isIndexIncomplete() {
+        return !mailSearchDao.findUnindexedMailIdsAfter(null, 1).isEmpty();
+    }
+
+    /**
+     * Reindexa en paralelo los bloques de ids que devuelve {@code nextChunk}. Un bloque que falla
+     * (por ejemplo, por una clave duplicada al coincidir con el indexado de un correo entregado o
+     * editado en ese momento) se reintenta una vez al final; si vuelve a fallar se informa y se
+     * sigue con el resto.
+     */
+    private int reindexChunks(BiFunction<UUID, Integer, List<UUID>> nextChunk, int threads, String summary) {
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "search-reindex");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            Map<List<UUID>, Future<Integer>> chunks = new LinkedHashMap<>();
+            UUID after = null;
+            while (true) {
+                List<UUID> ids = nextChunk.apply(after, REBUILD_CHUNK);
+                if (ids.isEmpty()) {
+                    break;
+                }
+                chunks.put(ids, executor.submit(() -> mailSearchDao.reindex(ids)));
+                after = ids.get(ids.size() - 1);
+            }
+            int indexed = 0;
+            int failed = 0;
+            for (Map.Entry<List<UUID>, Future<Integer>> chunk : chunks.entrySet()) {
+                try {
+                    indexed += chunk.getValue().get();
+                } catch (ExecutionException e) {
+                    try {
+                        indexed += mailSearchDao.reindex(chunk.getKey());
+                    } catch (RuntimeException retry) {
+                        failed += chunk.getKey().size();
+                        System.err.println("Error al indexar un bloque de correos: " + retry.getMessage());
+                    }
+                }
+            }
+            if (indexed > 0 || failed > 0) {
+                System.out.printf("%s: %d correos en %.1f s con %d hilos%s%n", summary, indexed,
+                        (System.nanoTime() - start) / 1_000_000_000.0, threads, failed > 0 ? " (" + failed + " sin indexar)" : "");
+            }
+            averageLengthLoadedAt = 0;
+            return indexed;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Indexado de correos interrumpido", e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public String getStats() {
+        long count = searches.sum();
+        double avgMillis = count == 0 ? 0 : totalLatencyNanos.sum() / 1_000_000.0 / count;
+        return String.format("búsquedas=%d, latencia media=%.3f ms, latencia máx=%.3f ms",
+                count, avgMillis, maxLatencyNanos.get() / 1_000_000.0);
+    }
+
+    /**
+     * Cantidad de correos del buzón (o de la carpeta), leída de los contadores de carpeta.
+     */
+    private long countDocuments(User user, MailFolder folder) {
+        long total = 0;
+        for (FolderCounter counter : userMailDao.findFolderCounters(user).values()) {
+            if (folder == null || counter.getFolder() == folder) {
+                total += counter.getTotal();
+            }
+        }
+        return total;
+    }
+
+    private double getAverageLength() {
+        long now = System.currentTimeMillis();
+        if (now - averageLengthLoadedAt > STATS_TTL_MILLIS) {
+            averageLength = mailSearchDao.averageLength();
+            averageLengthLoadedAt = now;
+        }
+        return averageLength;
+    }
+
+    /**
+     * Evaluación de una consulta: cada nodo devuelve los correos que lo cumplen con su puntuación.
+     * Las apariciones de cada término se piden una sola vez por consulta.
+     */
+    private final class Evaluation {
+        private final User user;
+        private final MailFolder folder;
+        private final long documents;
+        private final double averageLength;
+        private final Map<String, Map<UUID, Posting>> postings = new HashMap<>();
+        private final Map<String, Map<UUID, Posting>> postingsWithPositions = new HashMap<>();
+        private final Map<UUID, LocalDateTime> dates = new HashMap<>();
+
+        private Evaluation(User user, MailFolder folder, long documents, double averageLength) {
+            this.user = user;
+            this.folder = folder;
+            this.documents = documents;
+            this.averageLength = averageLength > 0 ? averageLength : 1;
+        }
+
+        private Map<UUID, Double> evaluate(SearchQuery.Node node) {
+            if (node instanceof SearchQuery.Term term) {
+                return scoreTerm(term.term());
+            }
+            if (node instanceof SearchQuery.Phrase phrase) {
+                return scorePhrase(phrase.terms());
+            }
+            if (node instanceof SearchQuery.And and) {
+                return evaluateAnd(and.nodes());
+            }
+            if (node instanceof SearchQuery.Or or) {
+                Map<UUID, Double> union = new HashMap<>();
+                for (SearchQuery.Node child : or.nodes()) {
+                    evaluate(child).forEach((id, score) -> union.merge(id, score, Double::sum));
+                }
+                return union;
+            }
+            // Una exclusión sola no tiene contra qué restarse: no devuelve resultados
+            return new HashMap<>();
+        }
+
+        private Map<UUID, Double> evaluateAnd(List<SearchQuery.Node> nodes) {
+            List<Map<UUID, Double>> required = new ArrayList<>();
+            List<Map<UUID, Double>> excluded = new ArrayList<>();
+            for (SearchQuery.Node child : nodes) {
+                if (child instanceof SearchQuery.Not not) {
+                    excluded.add(evaluate(not.node()));
+                } else {
+                    required.add(evaluate(child));
+                }
+            }
+            if (required.isEmpty()) {
+                return new HashMap<>();
+            }
+            // Se parte del conjunto más chico para que la intersección recorra lo mínimo
+            required.sort(Comparator.comparingInt(Map::size));
+            Map<UUID, Double> result = new HashMap<>(required.get(0));
+            for (int i = 1; i < required.size() && !result.isEmpty(); i++) {
+                Map<UUID, Double> other = required.get(i);
+                result.entrySet().removeIf(entry -> !other.containsKey(entry.getKey()));
+                result.replaceAll((id, score) -> score + other.get(id));
+            }
+            for (Map<UUID, Double> other : excluded) {
+                result.keySet().removeAll(other.keySet());
+            }
+            return result;
+        }
+
+        private Map<UUID, Double> scoreTerm(String term) {
+            Map<UUID, Posting> termPostings = postings(term, false);
+            double idf = idf(termPostings.size());
+            Map<UUID, Double> scores = new HashMap<>(termPostings.size() * 2);
+            termPostings.forEach((id, posting) -> scores.put(id, bm25(idf, posting)));
+            return scores;
+        }
+
+        private Map<UUID, Double> scorePhrase(List<String> terms) {
+            List<Map<UUID, Posting>> lists = new ArrayList<>(terms.size());
+            Map<UUID, Posting> smallest = null;
+            for (String term : terms) {
+                Map<UUID, Posting> termPostings = postings(term, true);
+                lists.add(termPostings);
+                if (smallest == null || termPostings.size() < smallest.size()) {
+                    smallest = termPostings;
+                }
+            }
+
+            double[] idfs = new double[terms.size()];
+            for (int i = 0; i < terms.size(); i++) {
+                idfs[i] = idf(lists.get(i).size());
+            }
+            Map<UUID, Double> scores = new HashMap<>();
+            for (UUID id : smallest.keySet()) {
+                Posting[] docPostings = new Posting[terms.size()];
+                boolean all = true;
+                for (int i = 0; i < terms.size() && all; i++) {
+                    docPostings[i] = lists.get(i).get(id);
+                    all = docPostings[i] != null;
+                }
+                if (all && containsPhrase(docPostings)) {
+                    double score = 0;
+                    for (int i = 0; i < docPostings.length; i++) {
+                        score += bm25(idfs[i], docPostings[i]);
+                    }
+                    scores.put(id, score);
+                }
+            }
+            return scores;
+        }
+
+        private Map<UUID, Posting> postings(String term, boolean withPositions) {
+            Map<UUID, Posting> cached = postingsWithPositions.get(term);
+            if (cached == null && !withPositions) {
+                cached = postings.get(term);
+            }
+            if (cached != null) {
+                return cached;
+            }
+            Map<UUID, Posting> loaded = mailSearchDao.findPostings(user, folder, term, withPositions);
+            (withPositions ? postingsWithPositions : postings).put(term, loaded);
+            for (Posting posting : loaded.values()) {
+                dates.putIfAbsent(posting.getMailId(), posting.getMailDate());
+            }
+            return loaded;
+        }
+
+        private double idf(int documentFrequency) {
+            long n = Math.max(documents, documentFrequency);
+            return Math.log(1 + (n - documentFrequency + 0.5) / (documentFrequency + 0.5));
+        }
+
+        private double bm25(double idf, Posting posting) {
+            double tf = SUBJECT_BOOST * posting.getSubjectFrequency() + posting.getBodyFrequency();
+            double norm = K1 * (1 - B + B * posting.getLength() / averageLength);
+            return idf * tf * (K1 + 1) / (tf + norm);
+        }
+    }
+
+    /**
+     * Verdadero si alguna aparición del primer término va seguida por los demás en posiciones consecutivas.
+     */
+    static boolean containsPhrase(Posting[] postings) {
+        for (int start : postings[0].getPositions()) {
+            boolean match = true;
+            for (int i = 1; i < postings.length && match; i++) {
+                match = Arrays.binarySearch(postings[i].getPositions(), start + i) >= 0;
+            }
+            if (match) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
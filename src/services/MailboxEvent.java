@@ -0,0 +1,99 @@
+package services;
+
+import utils.MailFolder;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Cambio confirmado en el buzón de un usuario, publicado por {@link MailEventBus}.
+ * Los eventos por correos llevan sus ids; los que afectan a una carpeta entera (marcarla como
+ * leída, vaciar la papelera) llevan la carpeta y un conjunto de ids vacío.
+ */
+public interface MailboxEvent {
+
+    UUID userId();
+
+    /**
+     * Intenta fusionar el evento siguiente en este (mismo tipo, usuario y destino): la unión de
+     * ids equivale a aplicar los dos. Devuelve null si no se pueden fusionar.
+     */
+    MailboxEvent merge(MailboxEvent next);
+
+    /**
+     * Correos nuevos en la carpeta: entregados (INBOX, SENT) o creados como borrador.
+     */
+    record Delivered(UUID userId, MailFolder folder, Set<UUID> mailIds) implements MailboxEvent {
+        @Override
+        public MailboxEvent merge(MailboxEvent next) {
+            return next instanceof Delivered other && other.userId.equals(userId) && other.folder == folder
+                    ? new Delivered(userId, folder, union(mailIds, other.mailIds)) : null;
+        }
+    }
+
+    /**
+     * Cambió la marca de leído. Con ids vacíos y carpeta, afecta a toda la carpeta.
+     */
+    record FlagsChanged(UUID userId, MailFolder folder, Set<UUID> mailIds, boolean read) implements MailboxEvent {
+        public boolean isWholeFolder() {
+            return mailIds.isEmpty();
+        }
+
+        @Override
+        public MailboxEvent merge(MailboxEvent next) {
+            return next instanceof FlagsChanged other && other.userId.equals(userId) && other.folder == folder
+                    && other.read == read && !isWholeFolder() && !other.isWholeFolder()
+                    ? new FlagsChanged(userId, folder, union(mailIds, other.mailIds), read) : null;
+        }
+    }
+
+    /**
+     * Cambió el contenido del correo (asunto, destinatarios, fecha): un borrador guardado de nuevo.
+     */
+    record Updated(UUID userId, MailFolder folder, Set<UUID> mailIds) implements MailboxEvent {
+        @Override
+        public MailboxEvent merge(MailboxEvent next) {
+            return next instanceof Updated other && other.userId.equals(userId) && other.folder == folder
+                    ? new Updated(userId, folder, union(mailIds, other.mailIds)) : null;
+        }
+    }
+
+    record Moved(UUID userId, Set<UUID> mailIds, MailFolder target) implements MailboxEvent {
+        @Override
+        public MailboxEvent merge(MailboxEvent next) {
+            return next instanceof Moved other && other.userId.equals(userId) && other.target == target
+                    ? new Moved(userId, union(mailIds, other.mailIds), target) : null;
+        }
+    }
+
+    /**
+     * Correos quitados de las vistas (eliminados o marcados como eliminados). Con ids vacíos y
+     * carpeta, se vació la carpeta.
+     */
+    record Deleted(UUID userId, MailFolder folder, Set<UUID> mailIds) implements MailboxEvent {
+        @Override
+        public MailboxEvent merge(MailboxEvent next) {
+            return next instanceof Deleted other && other.userId.equals(userId) && other.folder == folder
+                    && !mailIds.isEmpty() && !other.mailIds.isEmpty()
+                    ? new Deleted(userId, folder, union(mailIds, other.mailIds)) : null;
+        }
+    }
+
+    /**
+     * Se descartaron eventos del usuario por desborde de la cola: el suscriptor debe volver a leer
+     * lo que muestra.
+     */
+    record Resync(UUID userId) implements MailboxEvent {
+        @Override
+        public MailboxEvent merge(MailboxEvent next) {
+            return next.userId().equals(userId) ? this : null;
+        }
+    }
+
+    private static Set<UUID> union(Set<UUID> first, Set<UUID> second) {
+        Set<UUID> ids = new HashSet<>(first);
+        ids.addAll(second);
+        return Set.copyOf(ids);
+    }
+}
@@ -0,0 +1,115 @@
+package services;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caché de consultas de un campo de autocompletado. Guarda, por usuario y texto, el conjunto
+ * completo de direcciones que contienen ese texto; como al seguir tecleando el nuevo texto extiende
+ * al anterior, sus candidatas son un subconjunto de las ya guardadas y basta con filtrarlas en lugar
+ * de volver a consultar los índices. Las entradas se descartan cuando cambia el directorio o el
+ * historial del usuario, y por tamaño (las menos usadas primero).
+ */
+public class NarrowingQueryCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 64;
+
+    private static final LongAdder exactHits = new LongAdder();
+    private static final LongAdder narrowedHits = new LongAdder();
+    private static final LongAdder misses = new LongAdder();
+    private static final LongAdder invalidations = new LongAdder();
+
+    private static final class Entry {
+        private final long directoryVersion;
+        private final long historyVersion;
+        private final List<String> keys;
+
+        private Entry(long directoryVersion, long historyVersion, List<String> keys) {
+            this.directoryVersion = directoryVersion;
+            this.historyVersion = historyVersion;
+            this.keys = keys;
+        }
+    }
+
+    private final Map<String, Entry> entries;
+
+    public NarrowingQueryCache() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    public NarrowingQueryCache(int maxEntries) {
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Candidatas (claves normalizadas) que contienen {@code query}, obtenidas de la entrada guardada
+     * para el mismo texto o para el texto más largo del que {@code query} es una extensión.
+     * Devuelve null si no hay ninguna entrada vigente que sirva.
+     */
+    synchronized List<String> find(UUID userId, String query, long directoryVersion, long historyVersion) {
+        for (int length = query.length(); length > 0; length--) {
+            String key = key(userId, query.substring(0, length));
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                continue;
+            }
+            if (entry.directoryVersion != directoryVersion || entry.historyVersion != historyVersion) {
+                entries.remove(key);
+                invalidations.increment();
+                continue;
+            }
+            if (length == query.length()) {
+                exactHits.increment();
+                return entry.keys;
+            }
+
+            List<String> narrowed = new ArrayList<>();
+            for (String candidate : entry.keys) {
+                if (candidate.contains(query)) {
+                    narrowed.add(candidate);
+                }
+            }
+            entries.put(key(userId, query), new Entry(directoryVersion, historyVersion, narrowed));
+            narrowedHits.increment();
+            return narrowed;
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Guarda el conjunto completo de candidatas de {@code query}; al filtrarlas se conserva su orden.
+     */
+    synchronized void put(UUID userId, String query, long directoryVersion, long historyVersion, List<String> keys) {
+        entries.put(key(userId, query), new Entry(directoryVersion, historyVersion, List.copyOf(keys)));
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    private static String key(UUID userId, String query) {
+        return userId + "\n" + query;
+    }
+
+    /**
+     * Aciertos acumulados de todos los campos: exactos (mismo texto) y por filtrado de un texto anterior.
+     */
+    public static String getStats() {
+        long exact = exactHits.sum();
+        long narrowed = narrowedHits.sum();
+        long total = exact + narrowed + misses.sum();
+        double hitRate = total == 0 ? 0 : (exact + narrowed) * 100.0 / total;
+        return String.format("consultas=%d, aciertos=%d (exactos=%d, filtrados=%d), fallos=%d, invalidadas=%d, tasa de aciertos=%.1f%%",
+                total, exact + narrowed, exact, narrowed, misses.sum(), invalidations.sum(), hitRate);
+    }
+}
@@ -0,0 +1,161 @@
+package services;
+
+import utils.TextTokenizer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Consulta de búsqueda ya analizada. Sintaxis:
+ * <ul>
+ *   <li>palabras separadas por espacios: todas deben aparecer (AND implícito)</li>
+ *   <li>{@code "frase exacta"}: las palabras seguidas y en ese orden</li>
+ *   <li>{@code OR} entre dos expresiones, {@code AND} explícito y paréntesis para agrupar</li>
+ *   <li>{@code NOT palabra} o {@code -palabra}: excluye los correos que la contienen</li>
+ * </ul>
+ * Los operadores van en mayúsculas para no confundirse con palabras buscadas.
+ */
+final class SearchQuery {
+
+    interface Node {
+    }
+
+    record Term(String term) implements Node {
+    }
+
+    record Phrase(List<String> terms) implements Node {
+    }
+
+    record Not(Node node) implements Node {
+    }
+
+    record And(List<Node> nodes) implements Node {
+    }
+
+    record Or(List<Node> nodes) implements Node {
+    }
+
+    private final List<String> tokens;
+    private int position;
+
+    private SearchQuery(List<String> tokens) {
+        this.tokens = tokens;
+    }
+
+    /**
+     * Analiza la consulta; devuelve null si no contiene ningún término buscable.
+     */
+    static Node parse(String query) {
+        SearchQuery parser = new SearchQuery(lex(query));
+        Node node = parser.parseOr();
+        while (parser.position < parser.tokens.size()) {
+            // Un ")" sobrante no invalida el resto de la consulta
+            parser.position++;
+            Node rest = parser.parseOr();
+            node = node == null ? rest : rest == null ? node : new And(List.of(node, rest));
+        }
+        return node;
+    }
+
+    private Node parseOr() {
+        List<Node> nodes = new ArrayList<>();
+        add(nodes, parseAnd());
+        while (peek("OR")) {
+            position++;
+            add(nodes, parseAnd());
+        }
+        return nodes.isEmpty() ? null : nodes.size() == 1 ? nodes.get(0) : new Or(nodes);
+    }
+
+    private Node parseAnd() {
+        List<Node> nodes = new ArrayList<>();
+        while (position < tokens.size() && !peek("OR") && !peek(")")) {
+            if (peek("AND")) {
+                position++;
+                continue;
+            }
+            add(nodes, parseUnary());
+        }
+        return nodes.isEmpty() ? null : nodes.size() == 1 ? nodes.get(0) : new And(nodes);
+    }
+
+    private Node parseUnary() {
+        String token = tokens.get(position++);
+        if (token.equals("NOT") || token.equals("-")) {
+            if (position >= tokens.size() || peek(")") || peek("OR")) {
+                return null;
+            }
+            Node negated = parseUnary();
+            return negated != null ? new Not(negated) : null;
+        }
+        if (token.equals("(")) {
+            Node group = parseOr();
+            if (peek(")")) {
+                position++;
+            }
+            return group;
+        }
+        if (token.startsWith("\"")) {
+            return words(token.substring(1));
+        }
+        return words(token);
+    }
+
+    /**
+     * Una palabra que el tokenizador divide en varias ("dir-ección", "a.b@c") se busca como frase.
+     */
+    private static Node words(String text) {
+        List<String> terms = TextTokenizer.tokenize(text);
+        if (terms.isEmpty()) {
+            return null;
+        }
+        return terms.size() == 1 ? new Term(terms.get(0)) : new Phrase(terms);
+    }
+
+    private boolean peek(String token) {
+        return position < tokens.size() && tokens.get(position).equals(token);
+    }
+
+    private static void add(List<Node> nodes, Node node) {
+        if (node != null) {
+            nodes.add(node);
+        }
+    }
+
+    /**
+     * Separa paréntesis, frases entre comillas (marcadas con una comilla inicial) y el "-" de exclusión.
+     */
+    private static List<String> lex(String query) {
+        List<String> tokens = new ArrayList<>();
+        int i = 0;
+        while (i < query.length()) {
+            char c = query.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '(' || c == ')') {
+                tokens.add(String.valueOf(c));
+                i++;
+            } else if (c == '"') {
+                int end = query.indexOf('"', i + 1);
+                if (end < 0) {
+                    end = query.length();
+                }
+                tokens.add("\"" + query.substring(i + 1, end));
+                i = end + 1;
+            } else {
+                if (c == '-') {
+                    tokens.add("-");
+                    i++;
+                    continue;
+                }
+                int start = i;
+                while (i < query.length() && !Character.isWhitespace(query.charAt(i))
+                        && query.charAt(i) != '(' && query.charAt(i) != ')' && query.charAt(i) != '"') {
+                    i++;
+                }
+                tokens.add(query.substring(start, i));
+            }
+        }
+        return tokens;
+    }
+}
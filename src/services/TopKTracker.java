@@ -0,0 +1,80 @@
+package services;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Las K direcciones con mayor clave de uso, en arreglos ordenados de mayor a menor.
+ * Las claves de frecency solo crecen al registrar un uso (y el decaimiento no altera el orden),
+ * así que una dirección fuera del top solo puede entrar desplazando a la última: cada
+ * actualización y cada lectura cuestan O(K), sin ordenar el historial ni crear objetos.
+ */
+final class TopKTracker {
+
+    private final double[] keys;
+    private final String[] emails;
+    private int size;
+
+    TopKTracker(int capacity) {
+        this.keys = new double[capacity];
+        this.emails = new String[capacity];
+    }
+
+    int capacity() {
+        return keys.length;
+    }
+
+    void update(String email, double key) {
+        int index = indexOf(email);
+        if (index < 0) {
+            if (size < keys.length) {
+                index = size++;
+            } else if (key > keys[size - 1]) {
+                index = size - 1;
+            } else {
+                return;
+            }
+            emails[index] = email;
+        }
+        keys[index] = key;
+
+        // Sube la entrada hasta su posición
+        while (index > 0 && keys[index - 1] < keys[index]) {
+            swap(index - 1, index);
+            index--;
+        }
+    }
+
+    private int indexOf(String email) {
+        for (int i = 0; i < size; i++) {
+            if (emails[i].equals(email)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void swap(int i, int j) {
+        double key = keys[i];
+        keys[i] = keys[j];
+        keys[j] = key;
+        String email = emails[i];
+        emails[i] = emails[j];
+        emails[j] = email;
+    }
+
+    List<String> top(int limit) {
+        int count = Math.min(limit, size);
+        List<String> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(emails[i]);
+        }
+        return result;
+    }
+
+    void clear() {
+        Arrays.fill(emails, 0, size, null);
+        size = 0;
+    }
+}
@@ -1,11 +1,18 @@
 package ui;
 
+import config.ConnectionPool;
 import controllers.ContactsController;
 import controllers.MailController;
 import controllers.UserController;
+import models.FolderCounter;
+import models.Mail;
+import models.SearchPage;
 import models.User;
 import models.UserMail;
 import persistence.dao.UserDao;
+import ui.components.FolderModelCache;
+import ui.components.MailCellRenderer;
+import ui.components.PagedMailListModel;
 import ui.dialogs.ComposeMailDialog;
 import ui.dialogs.ContactsDialog;
 import ui.dialogs.EmailHistoryDialog;
@@ -13,18 +20,40 @@ import ui.dialogs.ServerConfigDialog;
 import ui.dialogs.UserManagementDialog;
 
 import services.EmailHistoryService;
+import services.MailboxEvent;
 import utils.MailFolder;
 
 import javax.swing.*;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.EditorKit;
 import java.awt.*;
-import java.sql.Connection;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Supplier;
 
 public class MainFrame extends JFrame {
 
-    private final DefaultListModel<UserMail> mailListModel = new DefaultListModel<>();
-    private final JList<UserMail> mailList = new JList<>(mailListModel);
+    private static final int SEARCH_PAGE_SIZE = 50;
+
+    private final JList<UserMail> mailList = new JList<>();
     private final JTextArea messageView = new JTextArea();
+    private final JLabel statusLabel = new JLabel(" ");
+    private final List<JButton> bulkButtons = new ArrayList<>();
+    private final JScrollPane mailScrollPane = new JScrollPane(mailList);
+    private final DefaultListModel<UserMail> searchResults = new DefaultListModel<>();
+    private final FolderModelCache folderModels;
+    private SearchPage lastSearch;
+    private SwingWorker<SearchPage, Void> searchWorker;
+    private long searchGeneration;
+    private long bodyGeneration;
+    private String lastSearchQuery;
+    private MailFolder lastSearchFolder;
 
     private final User currentUser;
     private final MailController mailController;
@@ -34,6 +63,11 @@ public class MainFrame extends JFrame {
     private final services.InternalMailService mailService;
     private final EmailHistoryService emailHistoryService;
     private MailFolder currentFolder;
+    private final Map<MailFolder, JButton> folderButtons = new EnumMap<>(MailFolder.class);
+    private final Map<MailFolder, String> folderLabels = new EnumMap<>(MailFolder.class);
+    private Map<MailFolder, FolderCounter> folderCounters = new EnumMap<>(MailFolder.class);
+    private long counterGeneration;
+    private boolean countersLoading;
 
     public MainFrame(User currentUser, MailController mailController, UserController userController, ContactsController contactsController, UserDao userDao, services.InternalMailService mailService, EmailHistoryService emailHistoryService) {
         super("Cliente de Correo - " + currentUser.getEmail() + " (" + currentUser.getRole() + ")");
@@ -44,12 +78,15 @@ public class MainFrame extends JFrame {
         this.userDao = userDao;
         this.mailService = mailService;
         this.emailHistoryService = emailHistoryService;
+        this.folderModels = new FolderModelCache(mailController);
 
         setSize(1000, 600);
         setDefaultCloseOperation(EXIT_ON_CLOSE);
         setLocationRelativeTo(null);
 
         initUI();
+        // Los cambios del buzón (correos recibidos, marcas, movimientos) llegan como eventos en el hilo de Swing
+        mailController.subscribeToChanges(SwingUtilities::invokeLater, this::applyMailboxEvents);
     }
 
     private void initUI() {
@@ -60,26 +97,10 @@ public class MainFrame extends JFrame {
         foldersPanel.setLayout(new BoxLayout(foldersPanel, BoxLayout.Y_AXIS));
         foldersPanel.setBorder(BorderFactory.createTitledBorder("Carpetas"));
 
-        JButton inboxButton = new JButton("📥 INBOX");
-        inboxButton.addActionListener(e -> {
-            currentFolder = MailFolder.INBOX;
-            updateMailList();
-        });
-        foldersPanel.add(inboxButton);
-
-        JButton sentButton = new JButton("📤 SENT");
-        sentButton.addActionListener(e -> {
-            currentFolder = MailFolder.SENT;
-            updateMailList();
-        });
-        foldersPanel.add(sentButton);
-
-        JButton draftsButton = new JButton("📝 DRAFTS");
-        draftsButton.addActionListener(e -> {
-            currentFolder = MailFolder.DRAFTS;
-            updateMailList();
-        });
-        foldersPanel.add(draftsButton);
+        addFolderButton(foldersPanel, MailFolder.INBOX, "📥 INBOX");
+        addFolderButton(foldersPanel, MailFolder.SENT, "📤 SENT");
+        addFolderButton(foldersPanel, MailFolder.DRAFTS, "📝 DRAFTS");
+        addFolderButton(foldersPanel, MailFolder.TRASH, "🗑️ TRASH");
 
         JButton contactsButton = new JButton("👥 Contactos");
         contactsButton.addActionListener(e -> {
@@ -119,6 +140,35 @@ public class MainFrame extends JFrame {
             });
             foldersPanel.add(historyButton);
 
+            JButton repairCountersButton = new JButton("🔧 Reparar contadores");
+            // Recalcula todos los contadores: se hace en segundo plano y el resultado va a la barra de estado
+            repairCountersButton.addActionListener(e -> runInBackground(mailController::repairFolderCounters,
+                    "Contadores corregidos", this::refreshFolderCounters));
+            foldersPanel.add(repairCountersButton);
+            bulkButtons.add(repairCountersButton);
+
+            JButton reindexButton = new JButton("🔎 Reindexar búsqueda");
+            reindexButton.addActionListener(e -> {
+                reindexButton.setEnabled(false);
+                new SwingWorker<Integer, Void>() {
+                    @Override
+                    protected Integer doInBackground() {
+                        return mailController.rebuildSearchIndex();
+                    }
+
+                    @Override
+                    protected void done() {
+                        reindexButton.setEnabled(true);
+                        try {
+                            JOptionPane.showMessageDialog(MainFrame.this, "Correos indexados: " + get(), "Búsqueda", JOptionPane.INFORMATION_MESSAGE);
+                        } catch (Exception ex) {
+                            JOptionPane.showMessageDialog(MainFrame.this, "Error al reindexar: " + ex.getMessage(), "Búsqueda", JOptionPane.ERROR_MESSAGE);
+                        }
+                    }
+                }.execute();
+            });
+            foldersPanel.add(reindexButton);
+
             JButton userManagementButton = new JButton("👥 Gestión Usuarios");
             userManagementButton.addActionListener(e -> {
                 UserManagementDialog userManagementDialog = new UserManagementDialog(this, userDao);
@@ -129,36 +179,93 @@ public class MainFrame extends JFrame {
 
         add(foldersPanel, BorderLayout.WEST);
 
-        // Lista central de mails
-        mailList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
-        mailList.setCellRenderer((list, value, index, isSelected, cellHasFocus) -> {
-            String subject = value.getMail().getSubject();
-            String info;
-            if (currentFolder == MailFolder.SENT) {
-                // Mostrar destinatarios principales
-                List<User> recipients = value.getMail().getRecipients();
-                String to = recipients.isEmpty() ? "Sin destinatario" :
-                    recipients.stream().map(User::getEmail).reduce((a, b) -> a + ", " + b).orElse("");
-                info = "Para: " + to;
+        // Acciones sobre la selección o sobre toda la carpeta
+        JPanel actionsPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+
+        JButton markReadButton = new JButton("✔ Marcar leídos");
+        markReadButton.addActionListener(e -> {
+            List<UUID> ids = selectedMailIds();
+            runBulk(() -> mailController.markAsRead(ids, true), "marcados como leídos");
+        });
+        actionsPanel.add(markReadButton);
+
+        JButton markFolderReadButton = new JButton("✔ Marcar carpeta leída");
+        markFolderReadButton.addActionListener(e -> {
+            MailFolder folder = currentFolder;
+            runBulk(() -> mailController.markFolderAsRead(folder), "marcados como leídos");
+        });
+        actionsPanel.add(markFolderReadButton);
+
+        JButton deleteButton = new JButton("🗑️ Eliminar");
+        deleteButton.addActionListener(e -> {
+            List<UUID> ids = selectedMailIds();
+            if (ids.isEmpty()) {
+                return;
+            }
+            if (currentFolder == MailFolder.TRASH) {
+                int option = JOptionPane.showConfirmDialog(this, "¿Eliminar definitivamente " + ids.size() + " correos?",
+                        "Eliminar", JOptionPane.YES_NO_OPTION);
+                if (option == JOptionPane.YES_OPTION) {
+                    runBulk(() -> mailController.deleteMails(ids), "eliminados");
+                }
             } else {
-                // Mostrar remitente
-                String senderEmail = value.getMail().getSender() != null ? value.getMail().getSender().getEmail() : "Desconocido";
-                info = "De: " + senderEmail;
+                runBulk(() -> mailController.moveToTrash(ids), "movidos a la papelera");
+            }
+        });
+        actionsPanel.add(deleteButton);
+
+        JButton emptyTrashButton = new JButton("Vaciar papelera");
+        emptyTrashButton.addActionListener(e -> {
+            int option = JOptionPane.showConfirmDialog(this, "¿Vaciar la papelera?", "Papelera", JOptionPane.YES_NO_OPTION);
+            if (option == JOptionPane.YES_OPTION) {
+                runBulk(mailController::emptyTrash, "eliminados");
+            }
+        });
+        actionsPanel.add(emptyTrashButton);
+        bulkButtons.addAll(List.of(markReadButton, markFolderReadButton, deleteButton, emptyTrashButton));
+
+        // Búsqueda de texto completo: palabras, "frases", OR, NOT/-palabra
+        JTextField searchField = new JTextField(20);
+        JCheckBox allFoldersCheck = new JCheckBox("Todas las carpetas");
+        JButton moreResultsButton = new JButton("Más resultados");
+        moreResultsButton.setEnabled(false);
+        Runnable search = () -> {
+            lastSearch = null;
+            showSearchPage(searchField.getText().trim(), allFoldersCheck.isSelected() ? null : currentFolder, 0, moreResultsButton);
+        };
+        searchField.addActionListener(e -> search.run());
+        JButton searchButton = new JButton("🔍 Buscar");
+        searchButton.addActionListener(e -> search.run());
+        moreResultsButton.addActionListener(e -> {
+            if (lastSearch != null) {
+                showSearchPage(lastSearchQuery, lastSearchFolder, lastSearch.getOffset() + lastSearch.getItems().size(), moreResultsButton);
             }
-            return new JLabel("Asunto: " + subject + "  |  " + info);
         });
+        actionsPanel.add(searchField);
+        actionsPanel.add(allFoldersCheck);
+        actionsPanel.add(searchButton);
+        actionsPanel.add(moreResultsButton);
+
+        add(actionsPanel, BorderLayout.NORTH);
+
+        // Lista central de mails
+        mailList.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
+        // Una sola etiqueta reutilizada y altura fija: pintar no arma cadenas ni crea componentes
+        new MailCellRenderer(row -> row.getFolder() == MailFolder.SENT).installOn(mailList);
 
         mailList.addListSelectionListener(e -> {
             if (!e.getValueIsAdjusting()) {
-                UserMail selectedMail = mailList.getSelectedValue();
+                // Con varios correos seleccionados no se abre ninguno: la selección es para las acciones en lote
+                UserMail selectedMail = mailList.getSelectedIndices().length == 1 ? mailList.getSelectedValue() : null;
+                long expected = ++bodyGeneration;
                 if (selectedMail != null) {
-                    if (currentFolder == MailFolder.DRAFTS) {
-                        ComposeMailDialog composeDialog = new ComposeMailDialog(this, mailController, currentUser, userDao.findAll(), emailHistoryService);
-                        composeDialog.loadDraft(selectedMail.getMail());
-                        composeDialog.setVisible(true);
+                    // Por la carpeta de la fila: los resultados de una búsqueda pueden venir de cualquiera
+                    if (selectedMail.getFolder() == MailFolder.DRAFTS) {
+                        openDraft(selectedMail.getMail(), expected);
                     } else {
-                        messageView.setText(selectedMail.getMail().getMessage());
+                        showBody(selectedMail.getMail(), expected);
                         if (!selectedMail.isRead()) {
+                            // La fila y el contador se actualizan al llegar el evento del cambio
                             mailController.markAsRead(currentUser, selectedMail.getMail());
                         }
                     }
@@ -166,7 +273,6 @@ public class MainFrame extends JFrame {
             }
         });
 
-        JScrollPane mailScrollPane = new JScrollPane(mailList);
         mailScrollPane.setBorder(BorderFactory.createTitledBorder("Mensajes"));
         add(mailScrollPane, BorderLayout.CENTER);
 
@@ -175,32 +281,376 @@ public class MainFrame extends JFrame {
         JScrollPane messageScroll = new JScrollPane(messageView);
         messageScroll.setBorder(BorderFactory.createTitledBorder("Lectura"));
         messageScroll.setPreferredSize(new Dimension(1000, 150));
-        add(messageScroll, BorderLayout.SOUTH);
+        // Barra de estado: resultado de las acciones en lote
+        statusLabel.setBorder(BorderFactory.createEmptyBorder(2, 6, 2, 6));
+        JPanel southPanel = new JPanel(new BorderLayout());
+        southPanel.add(messageScroll, BorderLayout.CENTER);
+        southPanel.add(statusLabel, BorderLayout.SOUTH);
+        add(southPanel, BorderLayout.SOUTH);
 
         // Cargar bandeja de entrada por defecto
         currentFolder = MailFolder.INBOX;
         updateMailList();
     }
 
+    /**
+     * Lee el cuerpo del correo en flujo fuera del hilo de eventos, sobre un documento nuevo que se
+     * muestra al terminar; si mientras tanto cambió la selección, se descarta.
+     */
+    private void showBody(Mail mail, long expected) {
+        EditorKit kit = messageView.getUI().getEditorKit(messageView);
+        new SwingWorker<Document, Void>() {
+            @Override
+            protected Document doInBackground() {
+                Document document = kit.createDefaultDocument();
+                // El listado solo trae cabeceras: el cuerpo se lee en flujo al abrir el correo
+                mailController.readBody(mail, body -> {
+                    try {
+                        kit.read(body, document, 0);
+                    } catch (BadLocationException e) {
+                        throw new IOException(e);
+                    }
+                });
+                return document;
+            }
+
+            @Override
+            protected void done() {
+                if (expected != bodyGeneration) {
+                    return;
+                }
+                try {
+                    messageView.setDocument(get());
+                } catch (Exception ex) {
+                    showBodyError(ex);
+                }
+            }
+        }.execute();
+    }
+
+    private void openDraft(Mail draft, long expected) {
+        new SwingWorker<Mail, Void>() {
+            @Override
+            protected Mail doInBackground() {
+                return mailController.loadBody(draft);
+            }
+
+            @Override
+            protected void done() {
+                if (expected != bodyGeneration) {
+                    return;
+                }
+                try {
+                    Mail loaded = get();
+                    ComposeMailDialog composeDialog = new ComposeMailDialog(MainFrame.this, mailController, currentUser, userDao.findAll(), emailHistoryService);
+                    composeDialog.loadDraft(loaded);
+                    composeDialog.setVisible(true);
+                } catch (Exception ex) {
+                    showBodyError(ex);
+                }
+            }
+        }.execute();
+    }
+
+    /**
+     * El correo pudo borrarse desde otra sesión entre el listado y la lectura: se avisa en el panel de lectura.
+     */
+    private void showBodyError(Exception ex) {
+        Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+        messageView.setDocument(messageView.getUI().getEditorKit(messageView).createDefaultDocument());
+        messageView.setText(cause instanceof IllegalArgumentException
+                ? "El correo ya no existe."
+                : "Error al leer el correo: " + cause.getMessage());
+    }
+
     private void updateMailList() {
-        List<UserMail> mails = mailController.findByUserAndFolder(currentUser, currentFolder);
-        mailListModel.clear();
-        for (UserMail mail : mails) {
-            mailListModel.addElement(mail);
+        cancelSearch();
+        cancelFolderLoad();
+        // Al volver a una carpeta se muestra lo que ya tenía y se actualiza solo lo que cambió
+        mailList.setModel(folderModels.get(currentUser, currentFolder));
+        mailScrollPane.setBorder(BorderFactory.createTitledBorder("Mensajes"));
+        refreshFolderCounters();
+    }
+
+    /**
+     * La carga de la carpeta anterior no debe competir con la nueva ni pisar la lista al terminar.
+     */
+    private void cancelFolderLoad() {
+        if (mailList.getModel() instanceof PagedMailListModel previous) {
+            previous.cancel();
+        }
+    }
+
+    /**
+     * Descarta la búsqueda en curso: su resultado ya no se publica aunque termine.
+     */
+    private long cancelSearch() {
+        if (searchWorker != null) {
+            searchWorker.cancel(false);
+            searchWorker = null;
+        }
+        return ++searchGeneration;
+    }
+
+    /**
+     * Busca fuera del hilo de eventos (ranking y comprobación de frases consultan la base) y publica
+     * la página en él; una búsqueda nueva o un cambio de carpeta descartan el resultado anterior por
+     * su número de generación. Con offset 0 los resultados reemplazan a los anteriores.
+     */
+    private void showSearchPage(String query, MailFolder folder, int offset, JButton moreResultsButton) {
+        if (query.isEmpty()) {
+            updateMailList();
+            moreResultsButton.setEnabled(false);
+            return;
+        }
+        long expected = cancelSearch();
+        moreResultsButton.setEnabled(false);
+        mailScrollPane.setBorder(BorderFactory.createTitledBorder("Buscando…"));
+        searchWorker = new SwingWorker<>() {
+            @Override
+            protected SearchPage doInBackground() {
+                return mailController.search(query, folder, offset, SEARCH_PAGE_SIZE);
+            }
+
+            @Override
+            protected void done() {
+                if (expected != searchGeneration) {
+                    return;
+                }
+                searchWorker = null;
+                SearchPage page;
+                try {
+                    page = get();
+                } catch (Exception ex) {
+                    Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                    mailScrollPane.setBorder(BorderFactory.createTitledBorder("Resultados"));
+                    statusLabel.setText("Error al buscar: " + cause.getMessage());
+                    return;
+                }
+                lastSearch = page;
+                lastSearchQuery = query;
+                lastSearchFolder = folder;
+                if (offset == 0) {
+                    searchResults.clear();
+                }
+                for (UserMail userMail : page.getItems()) {
+                    searchResults.addElement(userMail);
+                }
+                if (mailList.getModel() != searchResults) {
+                    cancelFolderLoad();
+                    mailList.setModel(searchResults);
+                }
+                mailScrollPane.setBorder(BorderFactory.createTitledBorder("Resultados: " + page.getTotal()));
+                mailScrollPane.repaint();
+                moreResultsButton.setEnabled(page.hasNext());
+            }
+        };
+        searchWorker.execute();
+    }
+
+    private void addFolderButton(JPanel panel, MailFolder folder, String label) {
+        JButton button = new JButton(label);
+        button.addActionListener(e -> {
+            currentFolder = folder;
+            updateMailList();
+        });
+        folderButtons.put(folder, button);
+        folderLabels.put(folder, label);
+        panel.add(button);
+    }
+
+    /**
+     * Lee los contadores mantenidos (una fila por carpeta) fuera del hilo de eventos y muestra los no
+     * leídos en los botones. Si mientras tanto se pide otra lectura o se ajustan localmente, el
+     * resultado se descarta.
+     */
+    private void refreshFolderCounters() {
+        long expected = ++counterGeneration;
+        countersLoading = true;
+        new SwingWorker<Map<MailFolder, FolderCounter>, Void>() {
+            @Override
+            protected Map<MailFolder, FolderCounter> doInBackground() {
+                return mailController.getFolderCounters();
+            }
+
+            @Override
+            protected void done() {
+                if (expected != counterGeneration) {
+                    return;
+                }
+                countersLoading = false;
+                try {
+                    folderCounters = new EnumMap<>(MailFolder.class);
+                    folderCounters.putAll(get());
+                    updateFolderLabels();
+                } catch (Exception ex) {
+                    System.err.println("Error al cargar los contadores de carpetas: " + ex.getMessage());
+                }
+            }
+        }.execute();
+    }
+
+    private void updateFolderLabels() {
+        folderButtons.forEach((folder, button) -> {
+            FolderCounter counter = folderCounters.get(folder);
+            long unread = counter != null ? counter.getUnread() : 0;
+            button.setText(folderLabels.get(folder) + (unread > 0 ? " (" + unread + ")" : ""));
+            button.setToolTipText(counter != null ? counter.getTotal() + " correos" : "Sin correos");
+        });
+    }
+
+    private List<UUID> selectedMailIds() {
+        List<UUID> ids = new ArrayList<>();
+        for (UserMail userMail : mailList.getSelectedValuesList()) {
+            if (userMail != null) {
+                ids.add(userMail.getMail().getId());
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Ejecuta una acción en lote y muestra cuántos correos afectó en la barra de estado; la lista y
+     * los contadores se actualizan con los eventos que publica el servicio.
+     */
+    private void runBulk(Supplier<Integer> operation, String action) {
+        runInBackground(operation, "Correos " + action, () -> messageView.setText(""));
+    }
+
+    /**
+     * Ejecuta la operación fuera del hilo de eventos y muestra "summary: resultado" en la barra de
+     * estado; {@code onSuccess} corre después en el hilo de eventos. Los botones de estas acciones
+     * quedan deshabilitados mientras dura.
+     */
+    private void runInBackground(Supplier<Integer> operation, String summary, Runnable onSuccess) {
+        bulkButtons.forEach(button -> button.setEnabled(false));
+        statusLabel.setText("Procesando…");
+        new SwingWorker<Integer, Void>() {
+            @Override
+            protected Integer doInBackground() {
+                return operation.get();
+            }
+
+            @Override
+            protected void done() {
+                bulkButtons.forEach(button -> button.setEnabled(true));
+                try {
+                    statusLabel.setText(summary + ": " + get());
+                    onSuccess.run();
+                } catch (Exception ex) {
+                    Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                    statusLabel.setText(" ");
+                    JOptionPane.showMessageDialog(MainFrame.this, "Error: " + cause.getMessage(), summary, JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        }.execute();
+    }
+
+    /**
+     * Aplica los cambios del buzón publicados por el servicio. Las marcas de leído se aplican a las
+     * filas cargadas y al contador en pantalla sin consultar; el resto actualiza la carpeta visible
+     * (solo la primera página, ver {@link PagedMailListModel#refresh()}) y relee los contadores,
+     * una sola vez por lote.
+     */
+    private void applyMailboxEvents(List<MailboxEvent> events) {
+        boolean refreshList = false;
+        boolean refreshCounters = false;
+        for (MailboxEvent event : events) {
+            if (event instanceof MailboxEvent.FlagsChanged flags && !flags.isWholeFolder()) {
+                applyRead(flags.mailIds(), flags.read());
+            } else {
+                refreshCounters = true;
+                refreshList |= affectsCurrentFolder(event);
+            }
+        }
+        if (refreshList && mailList.getModel() instanceof PagedMailListModel model) {
+            model.refresh();
+        }
+        if (refreshCounters) {
+            refreshFolderCounters();
+        }
+    }
+
+    private boolean affectsCurrentFolder(MailboxEvent event) {
+        if (event instanceof MailboxEvent.Delivered delivered) {
+            return delivered.folder() == currentFolder;
+        }
+        if (event instanceof MailboxEvent.Updated updated) {
+            return updated.folder() == currentFolder;
+        }
+        if (event instanceof MailboxEvent.FlagsChanged flags) {
+            return flags.folder() == currentFolder;
+        }
+        if (event instanceof MailboxEvent.Deleted deleted) {
+            return deleted.folder() == null || deleted.folder() == currentFolder;
+        }
+        // Movidos (se desconoce el origen) o relectura pedida
+        return true;
+    }
+
+    private void applyRead(Set<UUID> mailIds, boolean read) {
+        List<UserMail> changed = new ArrayList<>();
+        if (mailList.getModel() instanceof PagedMailListModel model) {
+            changed.addAll(model.applyRead(mailIds, read));
+        } else {
+            for (int i = 0; i < searchResults.size(); i++) {
+                UserMail userMail = searchResults.get(i);
+                if (userMail.isRead() != read && mailIds.contains(userMail.getMail().getId())) {
+                    userMail.setRead(read);
+                    searchResults.set(i, userMail);
+                    changed.add(userMail);
+                }
+            }
+        }
+        for (UserMail userMail : changed) {
+            FolderCounter counter = folderCounters.get(userMail.getFolder());
+            if (counter != null) {
+                folderCounters.put(userMail.getFolder(), counter.plus(
+                        new FolderCounter(counter.getUserId(), userMail.getFolder(), 0, read ? -1 : 1, 0)));
+            }
+        }
+        if (!changed.isEmpty()) {
+            updateFolderLabels();
+            if (countersLoading) {
+                // La lectura en curso pudo empezar antes de este cambio y lo desharía al llegar
+                refreshFolderCounters();
+            }
         }
     }
 
     public static void main(String[] args) {
         SwingUtilities.invokeLater(() -> {
             try {
-                Connection connection = config.DatabaseConfig.getConnection();
+                ConnectionPool connectionPool = config.DatabaseConfig.getConnectionPool();
+                new persistence.migration.SchemaMigrator(connectionPool, persistence.migration.Migrations.all()).migrate();
                 
-                var userDao = new persistence.impl.UserDaoImpl(connection);
-                var mailDao = new persistence.impl.MailDaoImpl(connection, userDao);
-                var userMailDao = new persistence.impl.UserMailDaoImpl(connection, userDao);
-                var contactBookDao = new persistence.impl.ContactBookDaoImpl(connection, userDao);
+                var userDao = new persistence.impl.CachingUserDao(new persistence.impl.UserDaoImpl(connectionPool));
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> System.out.println("Caché de usuarios: " + userDao.getStats())));
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                    System.out.println("Autocompletado: " + ui.components.SuggestionEngine.getStats());
+                    System.out.println("Caché de consultas: " + services.NarrowingQueryCache.getStats());
+                    System.out.println("Lista de correos: " + ui.components.PagedMailListModel.getStats());
+                    System.out.println("Caché de carpetas: " + ui.components.FolderModelCache.getStats());
+                }));
+                var mailDao = new persistence.impl.MailDaoImpl(connectionPool, userDao);
+                var folderCounterDao = new persistence.impl.FolderCounterDaoImpl(connectionPool);
+                var mailSearchDao = new persistence.impl.MailSearchDaoImpl(connectionPool);
+                var userMailDao = new persistence.impl.WriteBehindUserMailDao(new persistence.impl.UserMailDaoImpl(connectionPool, userDao, folderCounterDao));
+                config.DatabaseConfig.runBeforeClose(userMailDao::close);
+                var contactBookDao = new persistence.impl.ContactBookDaoImpl(connectionPool, userDao);
                 
-                var internalMailService = new services.InternalMailService(mailDao, userMailDao, userDao);
+                var internalMailService = new services.InternalMailService(mailDao, userMailDao, userDao, folderCounterDao, mailSearchDao, connectionPool);
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> System.out.println("Eventos de buzón: " + internalMailService.getEventBus().getStats())));
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> System.out.println("Entregas: " + internalMailService.getStats())));
+                var mailSearchService = new services.MailSearchService(mailSearchDao, userMailDao);
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> System.out.println("Búsqueda: " + mailSearchService.getStats())));
+                if (mailSearchService.isIndexIncomplete()) {
+                    // Correos anteriores al índice: se indexan solo esos, en segundo plano y sin
+                    // vaciar el índice; la reconstrucción completa queda como acción de reparación
+                    Thread reindex = new Thread(() -> mailSearchService.indexMissing(Math.max(2, Runtime.getRuntime().availableProcessors())), "search-index-missing");
+                    reindex.setDaemon(true);
+                    reindex.start();
+                }
                 
                 var userController = new controllers.UserController(userDao);
                 
@@ -212,9 +662,11 @@ public class MainFrame extends JFrame {
                     System.exit(0);
                 }
                 
-                var mailController = new controllers.MailController(internalMailService, currentUser);
+                var mailController = new controllers.MailController(internalMailService, mailSearchService, currentUser);
                 var contactsController = new controllers.ContactsController(userDao, contactBookDao, currentUser);
-                var emailHistoryService = new services.EmailHistoryService(userDao);
+                var emailHistoryService = new services.EmailHistoryService(userDao, new persistence.impl.AddressUsageDaoImpl(connectionPool));
+                emailHistoryService.loadUser(currentUser);
+                config.DatabaseConfig.runBeforeClose(emailHistoryService::close);
                 
                 new MainFrame(currentUser, mailController, userController, contactsController, userDao, internalMailService, emailHistoryService).setVisible(true);
             } catch (Exception e) {
@@ -17,6 +17,7 @@ import java.util.Vector;
 public class AutoCompleteTextField extends JTextField {
     private final EmailHistoryService emailHistoryService;
     private final User currentUser;
+    private final SuggestionEngine suggestionEngine;
     private JWindow popup;
     private JList<String> suggestionList;
     private DefaultListModel<String> listModel;
@@ -26,6 +27,7 @@ public class AutoCompleteTextField extends JTextField {
     public AutoCompleteTextField(EmailHistoryService emailHistoryService, User currentUser) {
         this.emailHistoryService = emailHistoryService;
         this.currentUser = currentUser;
+        this.suggestionEngine = new SuggestionEngine(emailHistoryService, currentUser, MAX_SUGGESTIONS, this::showSuggestions);
         this.listModel = new DefaultListModel<>();
         this.suggestionList = new JList<>(listModel);
         
@@ -81,21 +83,21 @@ public class AutoCompleteTextField extends JTextField {
             @Override
             public void insertUpdate(DocumentEvent e) {
                 if (!isAdjusting) {
-                    SwingUtilities.invokeLater(() -> updateSuggestions());
+                    suggestionEngine.request(getText());
                 }
             }
 
             @Override
             public void removeUpdate(DocumentEvent e) {
                 if (!isAdjusting) {
-                    SwingUtilities.invokeLater(() -> updateSuggestions());
+                    suggestionEngine.request(getText());
                 }
             }
 
             @Override
             public void changedUpdate(DocumentEvent e) {
                 if (!isAdjusting) {
-                    SwingUtilities.invokeLater(() -> updateSuggestions());
+                    suggestionEngine.request(getText());
                 }
             }
         });
@@ -142,30 +144,11 @@ public class AutoCompleteTextField extends JTextField {
         });
     }
 
-    private void updateSuggestions() {
-        String text = getText();
-        if (text == null || text.trim().isEmpty()) {
-            hidePopup();
-            return;
-        }
-
-        String[] parts = text.split(",");
-        String lastPart = parts[parts.length - 1].trim();
-        
-        if (lastPart.isEmpty()) {
-            hidePopup();
-            return;
-        }
-
-        System.out.println("AutoCompleteTextField: Buscando sugerencias para '" + lastPart + "'");
-
-        // Buscar sugerencias
-        List<String> suggestions = emailHistoryService.searchEmails(currentUser, lastPart, MAX_SUGGESTIONS);
-        
-        System.out.println("AutoCompleteTextField: Sugerencias encontradas: " + suggestions);
-        
+    /**
+     * Muestra las sugerencias que publica el motor de búsqueda (en el hilo de eventos).
+     */
+    private void showSuggestions(List<String> suggestions) {
         if (suggestions.isEmpty()) {
-            System.out.println("AutoCompleteTextField: No hay sugerencias, ocultando popup");
             hidePopup();
             return;
         }
@@ -175,8 +158,6 @@ public class AutoCompleteTextField extends JTextField {
             listModel.addElement(suggestion);
         }
 
-        System.out.println("AutoCompleteTextField: Mostrando popup con " + suggestions.size() + " sugerencias");
-        
         showPopup();
         
         if (suggestionList.getModel().getSize() > 0) {
@@ -186,7 +167,6 @@ public class AutoCompleteTextField extends JTextField {
 
     private void showPopup() {
         if (popup.isVisible()) {
-            System.out.println("AutoCompleteTextField: Popup ya está visible");
             return;
         }
 
@@ -207,12 +187,10 @@ public class AutoCompleteTextField extends JTextField {
         popup.setVisible(true);
         popup.toFront();
         popup.requestFocus();
-        
-        System.out.println("AutoCompleteTextField: Popup mostrado en posición: " + x + ", " + y);
-        System.out.println("AutoCompleteTextField: Tamaño del popup: " + popup.getSize());
     }
 
     private void hidePopup() {
+        suggestionEngine.cancel();
         popup.setVisible(false);
     }
 
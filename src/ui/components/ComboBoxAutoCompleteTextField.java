@@ -16,12 +16,14 @@ import java.util.List;
 public class ComboBoxAutoCompleteTextField extends JComboBox<String> {
     private final EmailHistoryService emailHistoryService;
     private final User currentUser;
+    private final SuggestionEngine suggestionEngine;
     private boolean isAdjusting = false;
     private JTextField editor;
 
     public ComboBoxAutoCompleteTextField(EmailHistoryService emailHistoryService, User currentUser) {
         this.emailHistoryService = emailHistoryService;
         this.currentUser = currentUser;
+        this.suggestionEngine = new SuggestionEngine(emailHistoryService, currentUser, 8, this::showSuggestions);
         
         setEditable(true);
         setMaximumRowCount(8);
@@ -37,21 +39,21 @@ public class ComboBoxAutoCompleteTextField extends JComboBox<String> {
             @Override
             public void insertUpdate(DocumentEvent e) {
                 if (!isAdjusting) {
-                    SwingUtilities.invokeLater(() -> updateSuggestions());
+                    suggestionEngine.request(editor.getText());
                 }
             }
 
             @Override
             public void removeUpdate(DocumentEvent e) {
                 if (!isAdjusting) {
-                    SwingUtilities.invokeLater(() -> updateSuggestions());
+                    suggestionEngine.request(editor.getText());
                 }
             }
 
             @Override
             public void changedUpdate(DocumentEvent e) {
                 if (!isAdjusting) {
-                    SwingUtilities.invokeLater(() -> updateSuggestions());
+                    suggestionEngine.request(editor.getText());
                 }
             }
         });
@@ -70,6 +72,7 @@ public class ComboBoxAutoCompleteTextField extends JComboBox<String> {
                     }
                     e.consume();
                 } else if (e.getKeyCode() == KeyEvent.VK_ESCAPE) {
+                    suggestionEngine.cancel();
                     hidePopup();
                     e.consume();
                 }
@@ -87,27 +90,10 @@ public class ComboBoxAutoCompleteTextField extends JComboBox<String> {
         });
     }
 
-    private void updateSuggestions() {
-        String text = editor.getText();
-        if (text == null || text.trim().isEmpty()) {
-            hidePopup();
-            return;
-        }
-
-        String[] parts = text.split(",");
-        String lastPart = parts[parts.length - 1].trim();
-        
-        if (lastPart.isEmpty()) {
-            hidePopup();
-            return;
-        }
-
-        System.out.println("ComboBoxAutoCompleteTextField: Buscando sugerencias para '" + lastPart + "'");
-
-        List<String> suggestions = emailHistoryService.searchEmails(currentUser, lastPart, 8);
-        
-        System.out.println("ComboBoxAutoCompleteTextField: Sugerencias encontradas: " + suggestions);
-        
+    /**
+     * Muestra las sugerencias que publica el motor de búsqueda (en el hilo de eventos).
+     */
+    private void showSuggestions(List<String> suggestions) {
         if (suggestions.isEmpty()) {
             hidePopup();
             return;
@@ -0,0 +1,74 @@
+package ui.components;
+
+import controllers.MailController;
+import models.User;
+import utils.MailFolder;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Modelos de las carpetas vistas recientemente, por usuario y carpeta, con desalojo LRU.
+ * Al volver a una carpeta se muestra el modelo que ya tenía sus páginas cargadas y se actualiza
+ * en segundo plano con {@link PagedMailListModel#refresh()}, en vez de recargarla desde cero.
+ * Se usa solo desde el hilo de eventos.
+ */
+public class FolderModelCache {
+
+    public static final int DEFAULT_MAX_MODELS = 4;
+
+    private final MailController mailController;
+    private final int maxModels;
+    private final LinkedHashMap<List<Object>, PagedMailListModel> models;
+
+    // Acumuladas para todas las instancias, como las demás estadísticas que se muestran al salir
+    private static final LongAdder hits = new LongAdder();
+    private static final LongAdder misses = new LongAdder();
+    private static final LongAdder evictions = new LongAdder();
+
+    public FolderModelCache(MailController mailController) {
+        this(mailController, DEFAULT_MAX_MODELS);
+    }
+
+    public FolderModelCache(MailController mailController, int maxModels) {
+        this.mailController = mailController;
+        this.maxModels = maxModels;
+        this.models = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<List<Object>, PagedMailListModel> eldest) {
+                if (size() > FolderModelCache.this.maxModels) {
+                    eldest.getValue().cancel();
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Modelo de la carpeta: el que estaba en caché, ya con la actualización pedida, o uno nuevo.
+     */
+    public PagedMailListModel get(User user, MailFolder folder) {
+        List<Object> key = List.of(user.getId(), folder);
+        PagedMailListModel model = models.get(key);
+        if (model != null) {
+            hits.increment();
+            model.refresh();
+            return model;
+        }
+        misses.increment();
+        model = new PagedMailListModel(mailController, user, folder);
+        models.put(key, model);
+        return model;
+    }
+
+    public static String getStats() {
+        long h = hits.sum();
+        long m = misses.sum();
+        return String.format("aciertos=%d, fallos=%d, desalojos=%d, tasa de acierto=%.1f%%",
+                h, m, evictions.sum(), h + m == 0 ? 0 : 100.0 * h / (h + m));
+    }
+}
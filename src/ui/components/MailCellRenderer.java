@@ -0,0 +1,73 @@
+package ui.components;
+
+import models.UserMail;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Renderer de la lista de correos que reutiliza una única etiqueta para todas las filas.
+ * Los textos de cada correo se arman la primera vez que se pinta y quedan en una caché débil
+ * por fila, de modo que repintar o desplazarse no construye cadenas ni componentes. Si el correo
+ * se edita sobre la misma instancia (un borrador guardado), la entrada se vuelve a armar.
+ */
+public class MailCellRenderer extends DefaultListCellRenderer {
+
+    private static final String LOADING_TEXT = "Cargando…";
+    private static final String PROTOTYPE_TEXT = "Asunto: Prototipo  |  De: prototipo@ejemplo.com";
+
+    // UserMail no redefine equals, así que las claves son por identidad; se liberan junto con sus páginas
+    private final Map<UserMail, MailListItem> items = new WeakHashMap<>();
+    private final Predicate<UserMail> showRecipients;
+    private long itemsBuilt;
+
+    /**
+     * @param showRecipients indica para cada fila si se muestran los destinatarios en lugar del
+     *                       remitente; se decide por la fila porque una búsqueda mezcla carpetas
+     */
+    public MailCellRenderer(Predicate<UserMail> showRecipients) {
+        this.showRecipients = showRecipients;
+    }
+
+    /**
+     * Instala el renderer con una altura de fila fija tomada de una fila prototipo; con altura fija
+     * la lista no recorre todas las filas para calcular su tamaño.
+     */
+    public void installOn(JList<UserMail> list) {
+        list.setCellRenderer(this);
+        setFont(list.getFont());
+        setText(PROTOTYPE_TEXT);
+        list.setFixedCellHeight(getPreferredSize().height);
+    }
+
+    @Override
+    public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected, boolean cellHasFocus) {
+        // El texto se asigna después: super.getListCellRendererComponent arma uno con toString()
+        super.getListCellRendererComponent(list, null, index, isSelected, cellHasFocus);
+        if (value == null) {
+            // Fila de una página que todavía se está cargando en segundo plano
+            setText(LOADING_TEXT);
+        } else {
+            UserMail userMail = (UserMail) value;
+            setText(itemFor(userMail).getText(showRecipients.test(userMail)));
+        }
+        return this;
+    }
+
+    private MailListItem itemFor(UserMail userMail) {
+        MailListItem item = items.get(userMail);
+        if (item == null || !item.isCurrentFor(userMail.getMail())) {
+            item = MailListItem.of(userMail);
+            items.put(userMail, item);
+            itemsBuilt++;
+        }
+        return item;
+    }
+
+    public long getItemsBuilt() {
+        return itemsBuilt;
+    }
+}
@@ -0,0 +1,71 @@
+package ui.components;
+
+import models.Mail;
+import models.User;
+import models.UserMail;
+
+import java.util.List;
+
+/**
+ * Cabecera de un correo tal como se muestra en la lista: los textos se arman una sola vez al
+ * crearla y el renderer solo los asigna. No guarda el {@link UserMail} para que la caché del
+ * renderer pueda soltar las filas que ya no están en ninguna página; sí guarda las referencias de
+ * los campos con los que se armó, para detectar un correo editado sobre la misma instancia.
+ */
+public final class MailListItem {
+
+    private final String senderLine;
+    private final String recipientLine;
+    private final String subject;
+    private final User sender;
+    private final String senderEmail;
+    private final List<User> recipients;
+
+    private MailListItem(String senderLine, String recipientLine, Mail mail) {
+        this.senderLine = senderLine;
+        this.recipientLine = recipientLine;
+        this.subject = mail.getSubject();
+        this.sender = mail.getSender();
+        this.senderEmail = sender != null ? sender.getEmail() : null;
+        this.recipients = mail.getRecipients();
+    }
+
+    public static MailListItem of(UserMail userMail) {
+        Mail mail = userMail.getMail();
+        String subject = "Asunto: " + mail.getSubject() + "  |  ";
+
+        String senderEmail = mail.getSender() != null ? mail.getSender().getEmail() : "Desconocido";
+
+        List<User> recipients = mail.getRecipients();
+        StringBuilder to = new StringBuilder(subject).append("Para: ");
+        if (recipients.isEmpty()) {
+            to.append("Sin destinatario");
+        } else {
+            for (int i = 0; i < recipients.size(); i++) {
+                if (i > 0) {
+                    to.append(", ");
+                }
+                to.append(recipients.get(i).getEmail());
+            }
+        }
+        return new MailListItem(subject + "De: " + senderEmail, to.toString(), mail);
+    }
+
+    /**
+     * Indica si los textos siguen correspondiendo al correo. Los setters de {@link Mail} y
+     * {@link User} reemplazan la referencia, así que basta comparar por identidad, sin armar cadenas.
+     */
+    public boolean isCurrentFor(Mail mail) {
+        return mail.getSubject() == subject
+                && mail.getSender() == sender
+                && (sender == null || sender.getEmail() == senderEmail)
+                && mail.getRecipients() == recipients;
+    }
+
+    /**
+     * Texto de la fila: en enviados se muestran los destinatarios principales, en el resto el remitente.
+     */
+    public String getText(boolean showRecipients) {
+        return showRecipients ? recipientLine : senderLine;
+    }
+}
@@ -0,0 +1,578 @@
+package ui.components;
+
+import controllers.MailController;
+import models.MailCursor;
+import models.MailPage;
+import models.MailboxChanges;
+import models.User;
+import models.UserMail;
+import utils.MailFolder;
+
+import javax.swing.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Modelo de lista que carga una carpeta por páginas a medida que se desplaza la vista.
+ * Solo mantiene en memoria las últimas páginas usadas; del resto conserva únicamente el cursor
+ * donde empiezan, para volver a pedirlas con una búsqueda por clave (fecha, id).
+ * <p>
+ * Las consultas se hacen fuera del hilo de eventos: al abrir la carpeta se cuenta y se trae la
+ * primera página en segundo plano, y las filas de páginas aún no cargadas se muestran vacías
+ * (null) hasta que llegan. {@link #cancel()} descarta lo que esté en curso al cambiar de carpeta.
+ */
+public class PagedMailListModel extends AbstractListModel<UserMail> {
+
+    public static final int DEFAULT_PAGE_SIZE = 100;
+    public static final int DEFAULT_MAX_PAGES = 10;
+    // Con más cambios pendientes que estos conviene recargar la carpeta en vez de aplicarlos
+    public static final int MAX_CHANGES = 1000;
+
+    private static final ExecutorService LOADER = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "mail-list-loader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Tiempo que el modelo ocupa el hilo de eventos, acumulado para todos los modelos
+    private static final LongAdder edtCalls = new LongAdder();
+    private static final LongAdder edtNanos = new LongAdder();
+    private static final AtomicLong edtMaxNanos = new AtomicLong();
+    private static final LongAdder pageLoads = new LongAdder();
+    private static final LongAdder firstPageNanos = new LongAdder();
+    private static final LongAdder firstPages = new LongAdder();
+    private static final LongAdder refreshes = new LongAdder();
+    private static final LongAdder refreshNanos = new LongAdder();
+    private static final LongAdder rowsAdded = new LongAdder();
+    private static final LongAdder rowsRemoved = new LongAdder();
+    private static final LongAdder rowsChanged = new LongAdder();
+    private static final LongAdder deltaRefreshes = new LongAdder();
+    private static final LongAdder changesFetched = new LongAdder();
+
+    private final MailController mailController;
+    private final User user;
+    private final MailFolder folder;
+    private final int pageSize;
+    private final TreeMap<Integer, MailCursor> pageStarts = new TreeMap<>();
+    private final Map<Integer, List<UserMail>> pages;
+    private final Map<Integer, Future<?>> loading = new HashMap<>();
+    private final Set<Future<?>> running = new HashSet<>();
+    private long generation;
+    // Actualización pedida mientras se cargaban páginas: se hace cuando terminan
+    private boolean refreshPending;
+    private int size;
+    // Número de modificación del buzón que reflejan las filas cargadas
+    private long modseq;
+
+    public PagedMailListModel(MailController mailController, User user, MailFolder folder) {
+        this(mailController, user, folder, DEFAULT_PAGE_SIZE, DEFAULT_MAX_PAGES);
+    }
+
+    public PagedMailListModel(MailController mailController, User user, MailFolder folder, int pageSize, int maxPages) {
+        this.mailController = mailController;
+        this.user = user;
+        this.folder = folder;
+        this.pageSize = pageSize;
+        this.pages = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, List<UserMail>> eldest) {
+                return size() > maxPages;
+            }
+        };
+        reload();
+    }
+
+    public MailFolder getFolder() {
+        return folder;
+    }
+
+    /**
+     * Descarta las páginas cargadas y vuelve a contar la carpeta en segundo plano; el tamaño y la
+     * primera página se publican juntos, y después se adelanta la segunda.
+     */
+    public void reload() {
+        long start = System.nanoTime();
+        cancel();
+        long expected = generation;
+        long requestedAt = System.nanoTime();
+        submit(() -> {
+            // Se lee antes que las filas: un cambio concurrente se vuelve a recibir, pero no se pierde
+            long seq = mailController.findModseq(user);
+            int count = mailController.countByUserAndFolder(user, folder);
+            MailPage first = count > 0 ? mailController.findPageByUserAndFolder(user, folder, null, pageSize) : null;
+            return () -> {
+                if (first != null) {
+                    firstPages.increment();
+                    firstPageNanos.add(System.nanoTime() - requestedAt);
+                }
+                if (expected == generation) {
+                    modseq = seq;
+                }
+                publishReload(expected, count, first);
+            };
+        });
+        recordEdt(start);
+    }
+
+    private void publishReload(long expected, int count, MailPage first) {
+        if (expected != generation) {
+            return;
+        }
+        int oldSize = size;
+        pages.clear();
+        pageStarts.clear();
+        pageStarts.put(0, null);
+        size = count;
+        if (first != null) {
+            storePage(0, first);
+        }
+        if (oldSize > 0) {
+            fireIntervalRemoved(this, 0, oldSize - 1);
+        }
+        if (size > 0) {
+            fireIntervalAdded(this, 0, size - 1);
+        }
+        if (size > pageSize) {
+            requestPage(1);
+        }
+    }
+
+    /**
+     * Actualiza la lista sin descartarla: pide al buzón solo los cambios posteriores al número de
+     * modificación de lo que se muestra. Las marcas y asuntos de filas cargadas se reemplazan en el
+     * lugar; si hay altas, bajas o movimientos en la carpeta, se vuelve a contar y se compara la
+     * primera página (ver {@link #mergeHead}). Las diferencias se publican como eventos por fila para
+     * que la vista conserve el desplazamiento y la selección. Si hay páginas cargándose (el usuario
+     * se está desplazando) la actualización se deja pendiente hasta que terminen, en lugar de
+     * descartarlas. Si la primera página no está cargada o hay demasiados cambios se recarga todo.
+     */
+    public void refresh() {
+        long start = System.nanoTime();
+        if (pages.get(0) == null) {
+            reload();
+            return;
+        }
+        if (!loading.isEmpty()) {
+            refreshPending = true;
+            recordEdt(start);
+            return;
+        }
+        refreshPending = false;
+        long expected = newGeneration();
+        long since = modseq;
+        submit(() -> {
+            MailboxChanges changes = mailController.findChangesSince(user, since, MAX_CHANGES);
+            return () -> {
+                if (expected == generation) {
+                    applyChanges(changes, start);
+                }
+            };
+        });
+        recordEdt(start);
+    }
+
+    private void applyChanges(MailboxChanges changes, long start) {
+        if (!changes.isComplete()) {
+            reload();
+            return;
+        }
+        changesFetched.add(changes.getChanged().size() + changes.getRemoved().size());
+        Map<UUID, UserMail> changedById = new HashMap<>();
+        for (UserMail userMail : changes.getChanged()) {
+            changedById.put(userMail.getMail().getId(), userMail);
+        }
+
+        boolean structural = false;
+        Set<UUID> loadedIds = new HashSet<>();
+        for (Map.Entry<Integer, List<UserMail>> page : pages.entrySet()) {
+            List<UserMail> items = page.getValue();
+            for (int offset = 0; offset < items.size(); offset++) {
+                UserMail current = items.get(offset);
+                UUID id = current.getMail().getId();
+                loadedIds.add(id);
+                UserMail changed = changedById.get(id);
+                if (changes.getRemoved().containsKey(id)) {
+                    structural = true;
+                } else if (changed != null) {
+                    if (changed.getFolder() != folder || !Objects.equals(changed.getMail().getDate(), current.getMail().getDate())) {
+                        // Salió de la carpeta o cambió de posición (un borrador guardado de nuevo)
+                        structural = true;
+                    } else {
+                        items.set(offset, changed);
+                        int index = page.getKey() * pageSize + offset;
+                        fireContentsChanged(this, index, index);
+                        rowsChanged.increment();
+                    }
+                }
+            }
+        }
+        for (MailFolder removedFrom : changes.getRemoved().values()) {
+            structural |= removedFrom == folder;
+        }
+        // Un correo no cargado que ahora está en otra carpeta pudo haber salido de esta: basta con volver a contar
+        boolean recount = false;
+        for (UserMail userMail : changes.getChanged()) {
+            if (!loadedIds.contains(userMail.getMail().getId())) {
+                if (userMail.getFolder() == folder) {
+                    // En esta carpeta y no cargado: puede ser nuevo
+                    structural = true;
+                } else {
+                    recount = true;
+                }
+            }
+        }
+        if (!structural && !recount) {
+            modseq = changes.getModseq();
+            deltaRefreshes.increment();
+            refreshes.increment();
+            refreshNanos.add(System.nanoTime() - start);
+            runPendingRefresh();
+            return;
+        }
+
+        long expected = newGeneration();
+        List<UserMail> oldHead = pages.get(0);
+        int knownSize = size;
+        boolean needHead = structural;
+        submit(() -> {
+            int count = mailController.countByUserAndFolder(user, folder);
+            MailPage head = needHead || count != knownSize ? mailController.findPageByUserAndFolder(user, folder, null, pageSize) : null;
+            return () -> {
+                if (expected == generation) {
+                    if (head != null) {
+                        mergeHead(oldHead, count, head);
+                    } else {
+                        deltaRefreshes.increment();
+                    }
+                    modseq = changes.getModseq();
+                    refreshes.increment();
+                    refreshNanos.add(System.nanoTime() - start);
+                    runPendingRefresh();
+                }
+            };
+        });
+    }
+
+    /**
+     * Hace la actualización que quedó pendiente si ya no quedan páginas cargándose.
+     */
+    private void runPendingRefresh() {
+        if (refreshPending && loading.isEmpty()) {
+            refresh();
+        }
+    }
+
+    /**
+     * Recorre las dos versiones de la primera página hasta el último correo que tienen en común:
+     * hasta ahí ambas están completas, así que lo que falta en una fue agregado o quitado. Lo que
+     * cambió más abajo solo se refleja en el tamaño; las páginas siguientes se vuelven a pedir si
+     * sus posiciones se desplazaron.
+     */
+    private void mergeHead(List<UserMail> oldHead, int count, MailPage head) {
+        List<UserMail> newHead = head.getItems();
+        Map<UUID, UserMail> oldById = new HashMap<>();
+        for (UserMail userMail : oldHead) {
+            oldById.put(userMail.getMail().getId(), userMail);
+        }
+        Map<UUID, Integer> newPositions = new HashMap<>();
+        for (int j = 0; j < newHead.size(); j++) {
+            newPositions.put(newHead.get(j).getMail().getId(), j);
+        }
+
+        // Los correos comunes deben estar en el mismo orden; si no (un borrador cambió de fecha),
+        // la primera página se reemplaza entera
+        int lastOld = -1;
+        int lastNew = -1;
+        for (int i = 0; i < oldHead.size(); i++) {
+            Integer j = newPositions.get(oldHead.get(i).getMail().getId());
+            if (j != null) {
+                if (j < lastNew) {
+                    lastOld = -1;
+                    break;
+                }
+                lastOld = i;
+                lastNew = j;
+            }
+        }
+        int oldSize = size;
+        pages.put(0, newHead);
+        if (head.hasNext()) {
+            pageStarts.put(1, head.getNextCursor());
+        }
+        size = count;
+        if (lastOld < 0) {
+            replaceAll(oldSize);
+            return;
+        }
+
+        int position = 0;
+        int i = 0;
+        int j = 0;
+        while (i <= lastOld || j <= lastNew) {
+            UserMail before = i <= lastOld ? oldHead.get(i) : null;
+            UserMail after = j <= lastNew ? newHead.get(j) : null;
+            if (before != null && after != null && before.getMail().getId().equals(after.getMail().getId())) {
+                if (before.isRead() != after.isRead()
+                        || !Objects.equals(before.getMail().getSubject(), after.getMail().getSubject())) {
+                    fireContentsChanged(this, position, position);
+                    rowsChanged.increment();
+                }
+                i++;
+                j++;
+                position++;
+            } else if (before != null && !newPositions.containsKey(before.getMail().getId())) {
+                fireIntervalRemoved(this, position, position);
+                rowsRemoved.increment();
+                i++;
+            } else {
+                fireIntervalAdded(this, position, position);
+                rowsAdded.increment();
+                j++;
+                position++;
+            }
+        }
+
+        // Tamaño que tendría la lista si nada cambió debajo de la zona comparada
+        int expectedSize = oldSize + (lastNew - lastOld);
+        if (count > expectedSize) {
+            fireIntervalAdded(this, expectedSize, count - 1);
+        } else if (count < expectedSize) {
+            fireIntervalRemoved(this, count, expectedSize - 1);
+        }
+        boolean shifted = lastNew != lastOld || count != oldSize
+                || oldHead.size() != newHead.size()
+                || !oldHead.get(oldHead.size() - 1).getMail().getId().equals(newHead.get(newHead.size() - 1).getMail().getId());
+        if (shifted) {
+            // Las páginas siguientes quedaron desalineadas: se vuelven a pedir al mostrarse
+            dropPagesAfterHead();
+            if (count > pageSize) {
+                fireContentsChanged(this, pageSize, count - 1);
+            }
+        }
+    }
+
+    private void dropPagesAfterHead() {
+        // Una página pedida con las posiciones anteriores ya no corresponde: se vuelve a pedir al mostrarse
+        newGeneration();
+        pages.keySet().removeIf(pageIndex -> pageIndex > 0);
+        pageStarts.keySet().removeIf(pageIndex -> pageIndex > 1);
+    }
+
+    private void replaceAll(int oldSize) {
+        dropPagesAfterHead();
+        if (oldSize > 0) {
+            fireIntervalRemoved(this, 0, oldSize - 1);
+        }
+        if (size > 0) {
+            fireIntervalAdded(this, 0, size - 1);
+        }
+    }
+
+    /**
+     * Aplica un cambio de la marca de leído a las filas cargadas, sin consultar, y devuelve las que
+     * cambiaron de estado. Las páginas no cargadas ya lo traerán al pedirse.
+     */
+    public List<UserMail> applyRead(Set<UUID> mailIds, boolean read) {
+        long start = System.nanoTime();
+        List<UserMail> changed = new ArrayList<>();
+        for (Map.Entry<Integer, List<UserMail>> page : pages.entrySet()) {
+            List<UserMail> items = page.getValue();
+            for (int offset = 0; offset < items.size(); offset++) {
+                UserMail userMail = items.get(offset);
+                if (userMail.isRead() != read && mailIds.contains(userMail.getMail().getId())) {
+                    userMail.setRead(read);
+                    changed.add(userMail);
+                    int index = page.getKey() * pageSize + offset;
+                    fireContentsChanged(this, index, index);
+                }
+            }
+        }
+        recordEdt(start);
+        return changed;
+    }
+
+    /**
+     * Invalida los resultados en curso y descarta las páginas pendientes (sin interrumpir su consulta),
+     * de modo que puedan volver a pedirse; si no, quedarían marcadas como "cargando" para siempre.
+     */
+    private long newGeneration() {
+        for (Future<?> future : loading.values()) {
+            future.cancel(false);
+            running.remove(future);
+        }
+        loading.clear();
+        return ++generation;
+    }
+
+    /**
+     * Cancela las consultas pendientes; las que ya se están ejecutando terminan (no se interrumpe
+     * el hilo: H2 cierra el archivo de la base si se interrumpe una lectura) y su resultado se descarta.
+     */
+    public void cancel() {
+        generation++;
+        refreshPending = false;
+        for (Future<?> future : running) {
+            future.cancel(false);
+        }
+        running.clear();
+        loading.clear();
+    }
+
+    @Override
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Devuelve null si la fila todavía se está cargando o ya no existe (la carpeta se redujo
+     * desde el último conteo).
+     */
+    @Override
+    public UserMail getElementAt(int index) {
+        long start = System.nanoTime();
+        int pageIndex = index / pageSize;
+        List<UserMail> page = pages.get(pageIndex);
+        UserMail element = null;
+        if (page == null) {
+            requestPage(pageIndex);
+        } else {
+            int offset = index % pageSize;
+            element = offset < page.size() ? page.get(offset) : null;
+        }
+        recordEdt(start);
+        return element;
+    }
+
+    public int getLoadedPageCount() {
+        return pages.size();
+    }
+
+    private void requestPage(int pageIndex) {
+        if (loading.containsKey(pageIndex)) {
+            return;
+        }
+        Map.Entry<Integer, MailCursor> known = pageStarts.floorEntry(pageIndex);
+        if (known == null) {
+            return;
+        }
+        long expected = generation;
+        Future<?> future = submit(() -> {
+            MailCursor start = startOf(pageIndex, known);
+            if (pageIndex > 0 && start == null) {
+                return () -> publishPage(expected, pageIndex, null, null);
+            }
+            MailPage loaded = mailController.findPageByUserAndFolder(user, folder, start, pageSize);
+            return () -> publishPage(expected, pageIndex, start, loaded);
+        });
+        loading.put(pageIndex, future);
+    }
+
+    private void publishPage(long expected, int pageIndex, MailCursor start, MailPage loaded) {
+        if (expected != generation) {
+            return;
+        }
+        loading.remove(pageIndex);
+        if (start != null) {
+            pageStarts.put(pageIndex, start);
+        }
+        if (loaded == null) {
+            pages.put(pageIndex, List.of());
+        } else {
+            storePage(pageIndex, loaded);
+        }
+        int first = pageIndex * pageSize;
+        int last = Math.min(size, first + pageSize) - 1;
+        if (first <= last) {
+            fireContentsChanged(this, first, last);
+        }
+        runPendingRefresh();
+    }
+
+    private void storePage(int pageIndex, MailPage loaded) {
+        pages.put(pageIndex, loaded.getItems());
+        if (loaded.hasNext()) {
+            pageStarts.put(pageIndex + 1, loaded.getNextCursor());
+        }
+        pageLoads.increment();
+    }
+
+    /**
+     * Cursor tras el cual empieza la página (null para la primera, o si está fuera de la carpeta).
+     * Si no se conoce, se salta desde la página conocida más cercana sin cargar las intermedias.
+     * Se ejecuta en el hilo de carga.
+     */
+    private MailCursor startOf(int pageIndex, Map.Entry<Integer, MailCursor> known) {
+        if (known.getKey() == pageIndex) {
+            return known.getValue();
+        }
+        int skip = (pageIndex - known.getKey()) * pageSize - 1;
+        return mailController.findCursor(user, folder, known.getValue(), skip);
+    }
+
+    /**
+     * Ejecuta la consulta en el hilo de carga y publica en el hilo de eventos lo que devuelve.
+     * Los errores se informan sin dejar la página marcada como "cargando" para siempre.
+     */
+    private Future<?> submit(Callable<Runnable> query) {
+        Future<?>[] self = new Future<?>[1];
+        self[0] = LOADER.submit(() -> {
+            Runnable publish;
+            try {
+                publish = query.call();
+            } catch (Exception e) {
+                System.err.println("Error al cargar la carpeta " + folder + ": " + e.getMessage());
+                publish = () -> {
+                    loading.values().remove(self[0]);
+                    runPendingRefresh();
+                };
+            }
+            Runnable result = publish;
+            SwingUtilities.invokeLater(() -> {
+                long start = System.nanoTime();
+                running.remove(self[0]);
+                result.run();
+                recordEdt(start);
+            });
+        });
+        running.add(self[0]);
+        return self[0];
+    }
+
+    private static void recordEdt(long start) {
+        long elapsed = System.nanoTime() - start;
+        edtCalls.increment();
+        edtNanos.add(elapsed);
+        edtMaxNanos.accumulateAndGet(elapsed, Math::max);
+    }
+
+    /**
+     * Tiempo de hilo de eventos usado por los modelos de lista, demora hasta la primera página y
+     * actualizaciones incrementales (latencia, cuántas se resolvieron solo con los cambios del buzón,
+     * cambios leídos y filas publicadas).
+     */
+    public static String getStats() {
+        long calls = edtCalls.sum();
+        long firsts = firstPages.sum();
+        long refreshCount = refreshes.sum();
+        return String.format("llamadas en EDT=%d, EDT total=%.1f ms, EDT máx=%.3f ms, páginas cargadas=%d, primera página media=%.1f ms, "
+                        + "actualizaciones=%d (media %.1f ms; solo cambios=%d; cambios leídos=%d; filas +%d -%d ~%d)",
+                calls, edtNanos.sum() / 1_000_000.0, edtMaxNanos.get() / 1_000_000.0, pageLoads.sum(),
+                firsts == 0 ? 0 : firstPageNanos.sum() / 1_000_000.0 / firsts,
+                refreshCount, refreshCount == 0 ? 0 : refreshNanos.sum() / 1_000_000.0 / refreshCount,
+                deltaRefreshes.sum(), changesFetched.sum(), rowsAdded.sum(), rowsRemoved.sum(), rowsChanged.sum());
+    }
+}
@@ -16,12 +16,14 @@ import java.util.List;
 public class SimpleAutoCompleteTextField extends JTextField {
     private final EmailHistoryService emailHistoryService;
     private final User currentUser;
+    private final SuggestionEngine suggestionEngine;
     private JComboBox<String> comboBox;
     private boolean isAdjusting = false;
 
     public SimpleAutoCompleteTextField(EmailHistoryService emailHistoryService, User currentUser) {
         this.emailHistoryService = emailHistoryService;
         this.currentUser = currentUser;
+        this.suggestionEngine = new SuggestionEngine(emailHistoryService, currentUser, 10, this::showSuggestions);
         
         setupComboBox();
         setupListeners();
@@ -50,21 +52,21 @@ public class SimpleAutoCompleteTextField extends JTextField {
             @Override
             public void insertUpdate(DocumentEvent e) {
                 if (!isAdjusting) {
-                    SwingUtilities.invokeLater(() -> updateSuggestions());
+                    suggestionEngine.request(getText());
                 }
             }
 
             @Override
             public void removeUpdate(DocumentEvent e) {
                 if (!isAdjusting) {
-                    SwingUtilities.invokeLater(() -> updateSuggestions());
+                    suggestionEngine.request(getText());
                 }
             }
 
             @Override
             public void changedUpdate(DocumentEvent e) {
                 if (!isAdjusting) {
-                    SwingUtilities.invokeLater(() -> updateSuggestions());
+                    suggestionEngine.request(getText());
                 }
             }
         });
@@ -114,27 +116,10 @@ public class SimpleAutoCompleteTextField extends JTextField {
         });
     }
 
-    private void updateSuggestions() {
-        String text = getText();
-        if (text == null || text.trim().isEmpty()) {
-            hideComboBox();
-            return;
-        }
-
-        String[] parts = text.split(",");
-        String lastPart = parts[parts.length - 1].trim();
-        
-        if (lastPart.isEmpty()) {
-            hideComboBox();
-            return;
-        }
-
-        System.out.println("SimpleAutoCompleteTextField: Buscando sugerencias para '" + lastPart + "'");
-
-        List<String> suggestions = emailHistoryService.searchEmails(currentUser, lastPart, 10);
-        
-        System.out.println("SimpleAutoCompleteTextField: Sugerencias encontradas: " + suggestions);
-        
+    /**
+     * Muestra las sugerencias que publica el motor de búsqueda (en el hilo de eventos).
+     */
+    private void showSuggestions(List<String> suggestions) {
         if (suggestions.isEmpty()) {
             hideComboBox();
             return;
@@ -146,8 +131,6 @@ public class SimpleAutoCompleteTextField extends JTextField {
         }
 
         showComboBox();
-        
-        System.out.println("SimpleAutoCompleteTextField: ComboBox mostrado con " + suggestions.size() + " sugerencias");
     }
 
     private void showComboBox() {
@@ -170,14 +153,12 @@ public class SimpleAutoCompleteTextField extends JTextField {
         SwingUtilities.invokeLater(() -> {
             if (comboBox.isVisible()) {
                 comboBox.showPopup();
-                System.out.println("SimpleAutoCompleteTextField: ComboBox popup mostrado");
             }
         });
-        
-        System.out.println("SimpleAutoCompleteTextField: ComboBox mostrado en posición: " + location.x + ", " + (location.y + size.height));
     }
 
     private void hideComboBox() {
+        suggestionEngine.cancel();
         comboBox.setVisible(false);
         comboBox.hidePopup();
     }
@@ -0,0 +1,161 @@
+package ui.components;
+
+import models.User;
+import services.EmailHistoryService;
+import services.NarrowingQueryCache;
+
+import javax.swing.*;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Búsqueda de sugerencias compartida por los campos con autocompletado.
+ * Espera a que el usuario deje de teclear (debounce con un Timer de Swing), ejecuta la búsqueda
+ * fuera del hilo de eventos y publica en él solo el resultado de la última consulta: cada pulsación
+ * nueva cancela la anterior sin interrumpirla y los resultados que llegan tarde se descartan por su
+ * número de generación.
+ */
+public class SuggestionEngine {
+
+    public static final int DEFAULT_DEBOUNCE_MILLIS = 150;
+
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(2, runnable -> {
+        Thread thread = new Thread(runnable, "autocomplete-search");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final LongAdder queries = new LongAdder();
+    private static final LongAdder published = new LongAdder();
+    private static final LongAdder discarded = new LongAdder();
+    private static final LongAdder totalLatencyNanos = new LongAdder();
+    private static final AtomicLong maxLatencyNanos = new AtomicLong();
+
+    private final EmailHistoryService emailHistoryService;
+    private final User currentUser;
+    private final int limit;
+    private final Consumer<List<String>> onResults;
+    private final Timer debounceTimer;
+    private final NarrowingQueryCache queryCache = new NarrowingQueryCache();
+    private final AtomicLong generation = new AtomicLong();
+    private Future<?> running;
+    private String pendingQuery;
+    private long pendingSince;
+
+    /**
+     * @param onResults recibe en el hilo de eventos las sugerencias (vacía si hay que ocultar la lista)
+     */
+    public SuggestionEngine(EmailHistoryService emailHistoryService, User currentUser, int limit,
+                            Consumer<List<String>> onResults) {
+        this(emailHistoryService, currentUser, limit, DEFAULT_DEBOUNCE_MILLIS, onResults);
+    }
+
+    public SuggestionEngine(EmailHistoryService emailHistoryService, User currentUser, int limit,
+                            int debounceMillis, Consumer<List<String>> onResults) {
+        this.emailHistoryService = emailHistoryService;
+        this.currentUser = currentUser;
+        this.limit = limit;
+        this.onResults = onResults;
+        this.debounceTimer = new Timer(debounceMillis, e -> search());
+        this.debounceTimer.setRepeats(false);
+    }
+
+    /**
+     * Programa la búsqueda para el texto del campo; se llama desde el hilo de eventos en cada cambio.
+     * Solo se busca la última dirección de una lista separada por comas.
+     */
+    public void request(String text) {
+        String query = lastAddress(text);
+        if (query.isEmpty()) {
+            cancel();
+            onResults.accept(List.of());
+            return;
+        }
+        if (pendingQuery == null) {
+            pendingSince = System.nanoTime();
+        }
+        pendingQuery = query;
+        debounceTimer.restart();
+    }
+
+    /**
+     * Descarta la búsqueda pendiente o en curso (por ejemplo al elegir una sugerencia).
+     */
+    public void cancel() {
+        debounceTimer.stop();
+        pendingQuery = null;
+        generation.incrementAndGet();
+        if (running != null) {
+            running.cancel(false);
+            running = null;
+        }
+    }
+
+    private void search() {
+        String query = pendingQuery;
+        long since = pendingSince;
+        pendingQuery = null;
+        if (query == null) {
+            return;
+        }
+
+        long current = generation.incrementAndGet();
+        if (running != null) {
+            // Sin interrumpir: una búsqueda ya empezada puede estar leyendo de H2, que cierra el archivo
+            // de la base si el hilo se interrumpe. Si aún no había empezado, no llega a ejecutarse
+            running.cancel(false);
+        }
+        queries.increment();
+        running = EXECUTOR.submit(() -> {
+            List<String> suggestions;
+            try {
+                suggestions = emailHistoryService.searchEmails(currentUser, query, limit, queryCache);
+            } catch (RuntimeException e) {
+                System.err.println("Error al buscar sugerencias para '" + query + "': " + e.getMessage());
+                return;
+            }
+            if (generation.get() != current) {
+                discarded.increment();
+                return;
+            }
+            SwingUtilities.invokeLater(() -> publish(current, since, suggestions));
+        });
+    }
+
+    private void publish(long expectedGeneration, long since, List<String> suggestions) {
+        if (generation.get() != expectedGeneration) {
+            discarded.increment();
+            return;
+        }
+        running = null;
+        long latency = System.nanoTime() - since;
+        published.increment();
+        totalLatencyNanos.add(latency);
+        maxLatencyNanos.accumulateAndGet(latency, Math::max);
+        onResults.accept(suggestions);
+    }
+
+    static String lastAddress(String text) {
+        if (text == null) {
+            return "";
+        }
+        int comma = text.lastIndexOf(',');
+        return text.substring(comma + 1).trim();
+    }
+
+    /**
+     * Latencia desde la primera pulsación de una ráfaga hasta que se muestran sus sugerencias
+     * (incluye la espera del debounce), acumulada para todos los campos.
+     */
+    public static String getStats() {
+        long count = published.sum();
+        double avgMillis = count == 0 ? 0 : totalLatencyNanos.sum() / 1_000_000.0 / count;
+        return String.format("búsquedas=%d, publicadas=%d, descartadas=%d, latencia media=%.3f ms, latencia máx=%.3f ms",
+                queries.sum(), count, discarded.sum(), avgMillis, maxLatencyNanos.get() / 1_000_000.0);
+    }
+}
@@ -16,6 +16,7 @@ import java.util.List;
 public class WorkingAutoCompleteTextField extends JTextField {
     private final EmailHistoryService emailHistoryService;
     private final User currentUser;
+    private final SuggestionEngine suggestionEngine;
     private JList<String> suggestionList;
     private JWindow popup;
     private DefaultListModel<String> listModel;
@@ -24,6 +25,7 @@ public class WorkingAutoCompleteTextField extends JTextField {
     public WorkingAutoCompleteTextField(EmailHistoryService emailHistoryService, User currentUser) {
         this.emailHistoryService = emailHistoryService;
         this.currentUser = currentUser;
+        this.suggestionEngine = new SuggestionEngine(emailHistoryService, currentUser, 8, this::showSuggestions);
         this.listModel = new DefaultListModel<>();
         this.suggestionList = new JList<>(listModel);
         
@@ -71,21 +73,21 @@ public class WorkingAutoCompleteTextField extends JTextField {
             @Override
             public void insertUpdate(DocumentEvent e) {
                 if (!isAdjusting) {
-                    SwingUtilities.invokeLater(() -> updateSuggestions());
+                    suggestionEngine.request(getText());
                 }
             }
 
             @Override
             public void removeUpdate(DocumentEvent e) {
                 if (!isAdjusting) {
-                    SwingUtilities.invokeLater(() -> updateSuggestions());
+                    suggestionEngine.request(getText());
                 }
             }
 
             @Override
             public void changedUpdate(DocumentEvent e) {
                 if (!isAdjusting) {
-                    SwingUtilities.invokeLater(() -> updateSuggestions());
+                    suggestionEngine.request(getText());
                 }
             }
         });
@@ -131,27 +133,10 @@ public class WorkingAutoCompleteTextField extends JTextField {
         });
     }
 
-    private void updateSuggestions() {
-        String text = getText();
-        if (text == null || text.trim().isEmpty()) {
-            hidePopup();
-            return;
-        }
-
-        String[] parts = text.split(",");
-        String lastPart = parts[parts.length - 1].trim();
-        
-        if (lastPart.isEmpty()) {
-            hidePopup();
-            return;
-        }
-
-        System.out.println("WorkingAutoCompleteTextField: Buscando sugerencias para '" + lastPart + "'");
-
-        List<String> suggestions = emailHistoryService.searchEmails(currentUser, lastPart, 8);
-        
-        System.out.println("WorkingAutoCompleteTextField: Sugerencias encontradas: " + suggestions);
-        
+    /**
+     * Muestra las sugerencias que publica el motor de búsqueda (en el hilo de eventos).
+     */
+    private void showSuggestions(List<String> suggestions) {
         if (suggestions.isEmpty()) {
             hidePopup();
             return;
@@ -200,13 +185,10 @@ public class WorkingAutoCompleteTextField extends JTextField {
         popup.pack();
         popup.setVisible(true);
         popup.toFront();
-        
-        System.out.println("WorkingAutoCompleteTextField: Popup mostrado en posición: " + x + ", " + y);
-        System.out.println("WorkingAutoCompleteTextField: Popup visible: " + popup.isVisible());
-        System.out.println("WorkingAutoCompleteTextField: Popup owner: " + popup.getOwner());
     }
 
     private void hidePopup() {
+        suggestionEngine.cancel();
         if (popup != null) {
             popup.setVisible(false);
         }
@@ -84,11 +84,12 @@ public class EmailHistoryDialog extends JDialog {
         if (frequentEmails.isEmpty()) {
             listModel.addElement("No hay direcciones en el historial");
         } else {
+            Map<String, Object> stats = emailHistoryService.getHistoryStats(currentUser);
+            @SuppressWarnings("unchecked")
+            List<String> topEmails = (List<String>) stats.get("topEmails");
+
             for (int i = 0; i < frequentEmails.size(); i++) {
                 String email = frequentEmails.get(i);
-                Map<String, Object> stats = emailHistoryService.getHistoryStats(currentUser);
-                @SuppressWarnings("unchecked")
-                List<String> topEmails = (List<String>) stats.get("topEmails");
                 
                 String displayText = String.format("%d. %s", i + 1, email);
                 if (topEmails != null && topEmails.contains(email)) {
@@ -0,0 +1,48 @@
+package utils;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Divide un texto en términos de búsqueda: letras y dígitos, en minúsculas y sin tildes
+ * ("Información" y "informacion" son el mismo término). Los términos más largos que
+ * MAX_TERM_LENGTH se descartan; la posición de cada término es su índice en la lista.
+ */
+public final class TextTokenizer {
+
+    public static final int MAX_TERM_LENGTH = 64;
+
+    private TextTokenizer() {
+    }
+
+    public static List<String> tokenize(String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return terms;
+        }
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFD).toLowerCase(Locale.ROOT);
+        StringBuilder term = new StringBuilder();
+        for (int i = 0; i < normalized.length(); i++) {
+            char c = normalized.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                continue;
+            }
+            if (Character.isLetterOrDigit(c)) {
+                term.append(c);
+            } else {
+                flush(term, terms);
+            }
+        }
+        flush(term, terms);
+        return terms;
+    }
+
+    private static void flush(StringBuilder term, List<String> terms) {
+        if (term.length() > 0 && term.length() <= MAX_TERM_LENGTH) {
+            terms.add(term.toString());
+        }
+        term.setLength(0);
+    }
+}